@@ -0,0 +1,60 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+/**
+ * Suggestions for the misspelled sampled forms by the chosen suggestion
+ * engine, with the suggestion cache disabled: all of them, or only
+ * the best `best` of them.
+ * One operation are the suggestions for `words` words.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx11g", "-Dfile.encoding=UTF-8", "-Dspellcheck.cache.size=0"})
+public class AlterBenchmark {
+    private static final int words = 100;
+    private static final int best = 5;
+
+    @Param({"1", "2"})
+    public int distance;
+
+    @Param({"walk", "automaton"})
+    public String suggester;
+
+    private SpellChecker spellChecker;
+    private List<String> misses;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchData.prepare();
+        spellChecker = new SpellChecker(new TrieLexicon());
+        spellChecker.setSuggester(suggester);
+        misses = BenchData.misses(BenchData.trie()).subList(0, words);
+    }
+
+    @Benchmark
+    public void alter(Blackhole blackhole){
+        for (String miss: misses){
+            for (String alternation: spellChecker.alter(miss, distance)){
+                blackhole.consume(alternation);
+            }
+        }
+    }
+
+    @Benchmark
+    public void suggestBest(Blackhole blackhole){
+        for (String miss: misses){
+            blackhole.consume(spellChecker.suggest(miss, distance, best));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.souradat.spellcheck.trie.Trie;
+
+/**
+ * Data of the benchmarks, prepared in the directory `data`
+ * of the working directory of the benchmarks (`bench/work`),
+ * where the lexicons look for the MorfFlex file and store their snapshots.
+ *
+ * The MorfFlex file and the book are linked from the directory `data`
+ * of the project (the property `bench.data`, default `../../data`).
+ * If they are not available, a synthetic MorfFlex file and a synthetic
+ * corpus are generated, always the same for the same seed, so the results
+ * of the runs can be compared. The snapshots built from the synthetic
+ * lexicon are removed by `make bench-clean`.
+ */
+public class BenchData {
+    /** System property with the directory of the real data.*/
+    public static final String dataProperty = "bench.data";
+    /** System property with the number of the lines of the corpus used by the benchmarks.*/
+    public static final String corpusLinesProperty = "bench.corpus.lines";
+
+    static final String morfflexFilename = "data/czech-morfflex-2.0.tsv";
+    static final String corpusFilename = "data/book.txt";
+    private static final String sampleFilename = "data/bench-sample.txt";
+
+    private static final long seed = 20230101L;
+    private static final int syntheticLemmas = 200_000;
+    private static final int syntheticCorpusLines = 20_000;
+    private static final int sampleSize = 4096;
+
+    private static final String alphabet = "aábcčdďeéěfghiíjklmnňoóprřsštťuúůvyýzž";
+    private static final String[] suffixes = {
+        "", "a", "u", "e", "y", "i", "ě", "o", "em", "ou", "ům", "ech", "ách", "ami",
+        "ý", "á", "é", "ého", "ému", "ým", "ými", "ích", "ovi", "ové", "at", "ala", "eme", "ete", "ují"
+    };
+
+    private static List<String> sample;
+
+    private BenchData(){
+    }
+
+    /**
+     * Make sure the MorfFlex file and the corpus exist, link the real ones
+     * or generate the synthetic ones.
+     * @throws UncheckedIOException if the files cannot be created
+     */
+    public static synchronized void prepare(){
+        prepareMorfflex();
+        try{
+            if (!Files.exists(Path.of(corpusFilename))){
+                Path realCorpus = realData().resolve(Path.of(corpusFilename).getFileName());
+                if (Files.exists(realCorpus)){
+                    Files.createSymbolicLink(Path.of(corpusFilename), realCorpus.toAbsolutePath());
+                }
+                else{
+                    writeSyntheticCorpus(Path.of(corpusFilename));
+                }
+            }
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make sure the MorfFlex file exists, link the real one or generate the synthetic one.
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    private static synchronized void prepareMorfflex(){
+        try{
+            Files.createDirectories(Path.of("data"));
+            if (!Files.exists(Path.of(morfflexFilename))){
+                Path realMorfflex = realData().resolve(Path.of(morfflexFilename).getFileName());
+                if (Files.exists(realMorfflex)){
+                    Files.createSymbolicLink(Path.of(morfflexFilename), realMorfflex.toAbsolutePath());
+                }
+                else{
+                    writeSyntheticMorfflex(Path.of(morfflexFilename));
+                }
+            }
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the directory with the real data.
+     * @return the directory given by the property `bench.data`
+     */
+    private static Path realData(){
+        return Path.of(System.getProperty(dataProperty, "../../data"));
+    }
+
+    /**
+     * Get a fixed random sample of the forms of the MorfFlex file.
+     * The sample is computed once and stored in the data directory.
+     * @return the sampled forms, in a random order
+     */
+    public static synchronized List<String> sample(){
+        if (sample != null){
+            return sample;
+        }
+        prepareMorfflex();
+        Path file = Path.of(sampleFilename);
+        try{
+            if (!Files.exists(file)){
+                Files.write(file, reservoirSample(), StandardCharsets.UTF_8);
+            }
+            sample = List.copyOf(Files.readAllLines(file, StandardCharsets.UTF_8));
+            return sample;
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get words of the same lengths as the sample, that are not in the given trie.
+     * The words are made from the sampled forms by changing their middle characters.
+     * @param known: the trie of the known forms
+     * @return the unknown words
+     */
+    public static List<String> misses(Trie known){
+        Random random = new Random(seed);
+        List<String> misses = new ArrayList<>();
+        for (String form: sample()){
+            char[] chars = form.toCharArray();
+            for (int attempt = 0; attempt < 10; attempt++){
+                chars[chars.length / 2] = alphabet.charAt(random.nextInt(alphabet.length()));
+                String miss = new String(chars);
+                if (!known.contains(miss)){
+                    misses.add(miss);
+                    break;
+                }
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Build an in-heap trie of all the forms of the MorfFlex file.
+     * @return the trie
+     */
+    public static Trie trie(){
+        prepareMorfflex();
+        try(Stream<String> lines = Files.lines(Path.of(morfflexFilename))){
+            return Trie.fromStream(lines.map(line -> line.split("\t")[2]));
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the beginning of the corpus, its length is given by the property
+     * `bench.corpus.lines` (default 2000 lines).
+     * @return the text of the corpus
+     */
+    public static String corpus(){
+        prepare();
+        int lines = Integer.getInteger(corpusLinesProperty, 2000);
+        try(Stream<String> text = Files.lines(Path.of(corpusFilename))){
+            return text.limit(lines).collect(Collectors.joining("\n", "", "\n"));
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Choose uniformly `sampleSize` forms of the MorfFlex file.
+     * @return the chosen forms
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> reservoirSample() throws IOException{
+        Random random = new Random(seed);
+        List<String> chosen = new ArrayList<>(sampleSize);
+        long seen = 0;
+        try(Stream<String> lines = Files.lines(Path.of(morfflexFilename))){
+            for (String line: (Iterable<String>) lines::iterator){
+                String form = line.split("\t")[2];
+                if (chosen.size() < sampleSize){
+                    chosen.add(form);
+                }
+                else{
+                    long index = (long) (random.nextDouble() * (seen + 1));
+                    if (index < sampleSize){
+                        chosen.set((int) index, form);
+                    }
+                }
+                seen++;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Generate a MorfFlex-like file: every lemma has several forms
+     * and every form is repeated for several tags.
+     * @param file: the created file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeSyntheticMorfflex(Path file) throws IOException{
+        Random random = new Random(seed);
+        try(BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            for (int i = 0; i < syntheticLemmas; i++){
+                String lemma = stem(random);
+                int forms = 4 + random.nextInt(12);
+                for (int j = 0; j < forms; j++){
+                    String form = lemma + suffixes[random.nextInt(suffixes.length)];
+                    int tags = 1 + random.nextInt(3);
+                    for (int t = 0; t < tags; t++){
+                        out.write(lemma + "\tNNIS" + t + "-----A----\t" + form + "\tNNIS" + t + "-----A----\n");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate a corpus of the forms of the sample, some of them with typos,
+     * some capitalized, separated by spaces and punctuation.
+     * @param file: the created file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeSyntheticCorpus(Path file) throws IOException{
+        List<String> forms = sample();
+        Random random = new Random(seed);
+        try(BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            for (int i = 0; i < syntheticCorpusLines; i++){
+                int words = 5 + random.nextInt(10);
+                for (int j = 0; j < words; j++){
+                    String word = forms.get(random.nextInt(forms.size()));
+                    if (random.nextInt(20) == 0){
+                        // a typo
+                        char[] chars = word.toCharArray();
+                        chars[random.nextInt(chars.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+                        word = new String(chars);
+                    }
+                    if (j == 0){
+                        word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    }
+                    out.write(word);
+                    out.write(j == words - 1 ? ".\n" : random.nextInt(8) == 0 ? ", " : " ");
+                }
+            }
+        }
+    }
+
+    /**
+     * Generate a random stem of 3 to 8 characters.
+     * @param random: the generator
+     * @return the stem
+     */
+    private static String stem(Random random){
+        int length = 3 + random.nextInt(6);
+        StringBuilder stem = new StringBuilder(length);
+        for (int i = 0; i < length; i++){
+            stem.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return stem.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon;
+
+/**
+ * Mixed workload on one lexicon shared by all the benchmark threads:
+ * 99 % lookups of the sampled forms and 1 % additions of new forms.
+ * Run with more threads (e.g. `-t 4`) to see the scaling of the reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx11g", "-Dfile.encoding=UTF-8"})
+public class ConcurrentLexiconBenchmark {
+    private final AtomicInteger added = new AtomicInteger();
+    private TrieLexicon lexicon;
+    private List<String> words;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchData.prepare();
+        lexicon = new TrieLexicon();
+        words = BenchData.sample();
+    }
+
+    @Benchmark
+    public boolean mixed(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) == 0){
+            return lexicon.addForm("přidané" + added.incrementAndGet());
+        }
+        return lexicon.contains(words.get(random.nextInt(words.size())));
+    }
+}
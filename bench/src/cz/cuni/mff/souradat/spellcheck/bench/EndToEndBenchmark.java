@@ -0,0 +1,44 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+/**
+ * Checking and correcting of the corpus (in memory, the report is discarded)
+ * with the default suggestion engine and with the suggestion cache disabled,
+ * so every operation does the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx11g", "-Dfile.encoding=UTF-8", "-Dspellcheck.cache.size=0"})
+public class EndToEndBenchmark {
+    private SpellChecker spellChecker;
+    private String corpus;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        corpus = BenchData.corpus();
+        spellChecker = new SpellChecker(new TrieLexicon());
+    }
+
+    @Benchmark
+    public boolean check(){
+        return spellChecker.check(new BufferedReader(new StringReader(corpus)), new BufferedWriter(Writer.nullWriter()));
+    }
+
+    @Benchmark
+    public boolean correct(){
+        return spellChecker.correct(new BufferedReader(new StringReader(corpus)), new BufferedWriter(Writer.nullWriter()));
+    }
+}
@@ -0,0 +1,54 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.Levenshtein;
+
+/**
+ * Levenshtein distance of two strings of the given length,
+ * the second one is the first one with a few random edits.
+ * Covers the bit-parallel algorithm (up to 64 characters),
+ * the dynamic programming (longer strings) and the bounded distance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dfile.encoding=UTF-8"})
+public class LevenshteinBenchmark {
+    private static final String alphabet = "aábcčdďeéěfghiíjklmnňoóprřsštťuúůvyýzž";
+
+    @Param({"4", "8", "16", "32", "64", "128"})
+    public int length;
+
+    private String first;
+    private String second;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        Random random = new Random(length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++){
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        first = new String(chars);
+        for (int edit = 0; edit < 2; edit++){
+            chars[random.nextInt(length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        second = new String(chars);
+    }
+
+    @Benchmark
+    public int distance(){
+        return Levenshtein.distance(first, second);
+    }
+
+    @Benchmark
+    public int boundedDistance(){
+        return Levenshtein.distance(first, second, 2);
+    }
+}
@@ -0,0 +1,73 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon;
+import cz.cuni.mff.souradat.spellcheck.lexicon.WordAlternator;
+
+/**
+ * Lookup of the sampled forms in the mapped trie lexicon, together with
+ * the case variants: the forms as they are, capitalized and all caps,
+ * and of the alternations of misspelled forms (almost all of them unknown),
+ * with and without the Bloom filter.
+ * One operation is the lookup of all the words of the workload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx11g", "-Dfile.encoding=UTF-8"})
+public class LexiconBenchmark {
+    @Param({"original", "capitalized", "uppercase"})
+    public String variant;
+
+    @Param({"10", "0"})
+    public int bloomBits;
+
+    private TrieLexicon lexicon;
+    private List<String> words;
+    private List<String> alternations;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchData.prepare();
+        System.setProperty(TrieLexicon.bloomProperty, Integer.toString(bloomBits));
+        lexicon = new TrieLexicon();
+        words = BenchData.sample().stream().map(this::toVariant).collect(Collectors.toList());
+        alternations = BenchData.misses(BenchData.trie()).subList(0, 20).stream()
+            .flatMap(miss -> WordAlternator.alternated(toVariant(miss), 1))
+            .collect(Collectors.toList());
+    }
+
+    private String toVariant(String form){
+        switch (variant){
+            case "capitalized":
+                return form.substring(0, 1).toUpperCase(Locale.ROOT) + form.substring(1);
+            case "uppercase":
+                return form.toUpperCase(Locale.ROOT);
+            default:
+                return form;
+        }
+    }
+
+    @Benchmark
+    public void contains(Blackhole blackhole){
+        for (String word: words){
+            blackhole.consume(lexicon.contains(word));
+        }
+    }
+
+    @Benchmark
+    public void containsAlternations(Blackhole blackhole){
+        for (String alternation: alternations){
+            blackhole.consume(lexicon.contains(alternation));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cz.cuni.mff.souradat.spellcheck.spellchecker.Stream2WordsRowsNums;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.Tokenizer;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.WordWithRowNum;
+
+/**
+ * Splitting of the corpus (in memory) into the words,
+ * by the iterable of the word objects and by the tokenizer itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dfile.encoding=UTF-8"})
+public class TokenizerBenchmark {
+    private String corpus;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        corpus = BenchData.corpus();
+    }
+
+    @Benchmark
+    public void iterable(Blackhole blackhole){
+        for (WordWithRowNum word: new Stream2WordsRowsNums(new BufferedReader(new StringReader(corpus)))){
+            blackhole.consume(word);
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) throws IOException{
+        Tokenizer words = new Tokenizer(new StringReader(corpus));
+        while (words.next()){
+            blackhole.consume(words.getLength());
+        }
+    }
+}
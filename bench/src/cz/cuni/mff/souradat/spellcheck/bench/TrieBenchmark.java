@@ -0,0 +1,41 @@
+package cz.cuni.mff.souradat.spellcheck.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cz.cuni.mff.souradat.spellcheck.trie.Trie;
+
+/**
+ * Lookup of the sampled forms (hits) and of the changed forms (misses)
+ * in the in-heap trie of the whole lexicon.
+ * One operation is the lookup of all the words of the workload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx11g", "-Dfile.encoding=UTF-8"})
+public class TrieBenchmark {
+    @Param({"hit", "miss"})
+    public String workload;
+
+    private Trie trie;
+    private List<String> words;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        trie = BenchData.trie();
+        words = workload.equals("hit") ? BenchData.sample() : BenchData.misses(trie);
+    }
+
+    @Benchmark
+    public void contains(Blackhole blackhole){
+        for (String word: words){
+            blackhole.consume(trie.contains(word));
+        }
+    }
+}
@@ -1,19 +1,131 @@
 package cz.cuni.mff.souradat.spellcheck;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import cz.cuni.mff.souradat.spellcheck.shell.BatchChecker;
+import cz.cuni.mff.souradat.spellcheck.shell.LoadGenerator;
+import cz.cuni.mff.souradat.spellcheck.shell.Server;
 import cz.cuni.mff.souradat.spellcheck.shell.Shell;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
 
-/** Main class of the SpellCheck project. 
- * To run the SpellCheck project, 
+/** Main class of the SpellCheck project.
+ * To run the SpellCheck project,
  * run this class as the main class.
  * Example: java -Xmx11g cz.cuni.mff.souradat.spellcheck.Main
+ *
+ * Without arguments the interactive shell is started.
+ * `server [port]` starts the server serving the requests over TCP on localhost,
+ * `loadgen textFile [kind [connections [requests [port]]]]` measures the running server,
+ * `check [--jobs N] [--out DIR] [--incremental] paths...` checks the files and directory trees in parallel.
 */
 public class Main {
+    private static final String usage = "Usage: Main\n"
+        + "       Main server [port]\n"
+        + "       Main loadgen textFile [has|alter|check|correct [connections [requests [port]]]]\n"
+        + "       Main check [--jobs N] [--out DIR] [--incremental] paths...";
+
     /**
      * Main method of the SpellCheck project.
-     * @param args are ignored
+     * @param args: none for the shell, `server`, `loadgen` or `check` with their arguments
      */
     public static void main(String[] args){
-        Shell shell = new Shell();
-        shell.run();
+        if (args.length == 0){
+            Shell shell = new Shell();
+            shell.run();
+            return;
+        }
+        try{
+            switch(args[0]){
+                case "server":
+                    int port = args.length > 1 ? Integer.parseInt(args[1]) : Server.defaultPort;
+                    new Server(new SpellChecker(), port).run();
+                    return;
+                case "loadgen":
+                    if (args.length < 2){
+                        break;
+                    }
+                    String kind = args.length > 2 ? args[2] : "has";
+                    int connections = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+                    int requests = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+                    int serverPort = args.length > 5 ? Integer.parseInt(args[5]) : Server.defaultPort;
+                    System.out.println(new LoadGenerator(args[1], kind, connections, requests, serverPort).run());
+                    return;
+                case "check":
+                    if (!check(args)){
+                        break;
+                    }
+                    return;
+                default:
+                    break;
+            }
+        }
+        catch(IllegalArgumentException | IOException e){
+            System.err.println("Unsuccessful. " + e.getMessage());
+            System.exit(1);
+        }
+        catch(InterruptedException e){
+            System.exit(1);
+        }
+        System.err.println(usage);
+        System.exit(1);
+    }
+
+    /**
+     * Run the batch checking of the files.
+     * @param args: `check`, the options and the paths
+     * @return false if the arguments are wrong, true otherwise
+     * (the program is terminated with the exit code 1 if a file could not be checked)
+     * @throws IOException if a path does not exist or a directory cannot be listed
+     * @throws InterruptedException if the checking was interrupted
+     * @see cz.cuni.mff.souradat.spellcheck.shell.BatchChecker
+     */
+    private static boolean check(String[] args) throws IOException, InterruptedException{
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Path outDirectory = null;
+        boolean incremental = false;
+        List<String> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++){
+            if (args[i].equals("--jobs") && i + 1 < args.length){
+                jobs = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--out") && i + 1 < args.length){
+                outDirectory = Path.of(args[++i]);
+            }
+            else if (args[i].equals("--incremental")){
+                incremental = true;
+            }
+            else if (args[i].startsWith("--")){
+                return false;
+            }
+            else{
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty() || jobs < 1){
+            return false;
+        }
+        // before the lexicon is loaded, which takes long
+        for (String path: paths){
+            if (!Files.exists(Path.of(path))){
+                throw new FileNotFoundException("The file or directory " + path + " does not exist.");
+            }
+        }
+        SpellChecker spellChecker = new SpellChecker();
+        boolean checked;
+        try{
+            checked = new BatchChecker(spellChecker, jobs, outDirectory, incremental).run(paths);
+        }
+        finally{
+            spellChecker.close();
+        }
+        if (!checked){
+            System.exit(1);
+        }
+        return true;
     }
 }
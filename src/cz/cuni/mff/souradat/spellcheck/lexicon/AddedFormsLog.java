@@ -0,0 +1,276 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+
+/**
+ * Append-only journal of the forms added to a lexicon, one form per line (UTF-8).
+ *
+ * Every added form is written to the file at once (to the page cache
+ * of the operating system, so it survives a crash of the process),
+ * but the file is forced to the disk only periodically, by a background
+ * thread, so one addition costs one small write instead of a disk flush.
+ * The forms added during the last `syncInterval` milliseconds can be lost
+ * only when the whole system fails.
+ *
+ * When the journal is opened, the stored forms are replayed. The line
+ * at the end of the file without the line end (a write interrupted by
+ * a failure) is dropped. After the forms are compacted into the snapshot
+ * of the lexicon, the journal is rewritten to contain only the forms
+ * added in the meantime.
+ *
+ * Several processes can share the journal: the replaying at the opening,
+ * every appending and the whole compaction are done under an exclusive
+ * lock of the file `addedforms.log.lock` next to the journal, the forms
+ * are appended to the current end of the file, and a journal replaced
+ * by the compaction in another process is opened again before the next
+ * appending. The forms appended by the other processes are kept in the
+ * journal until they are compacted, but they are not seen by this process
+ * before its next start.
+ */
+class AddedFormsLog {
+    private final Path path;
+    private volatile FileChannel channel;
+    /** The identity of the file open by `channel`, guarded by `this`.*/
+    private Object fileKey;
+    /** The lock file shared by the processes using the journal.*/
+    private final FileChannel lockChannel;
+    /** Whether anything was written since the last forcing to the disk.*/
+    private volatile boolean dirty;
+    private final ScheduledExecutorService syncer;
+
+    /**
+     * Open the journal, pass the stored forms to the consumer and start
+     * forcing the new forms to the disk periodically.
+     * @param path: the journal file, created if it does not exist
+     * @param syncInterval: the period of the forcing to the disk in milliseconds
+     * @param replayed: consumer of the stored forms, in the order of their addition
+     * @throws IOException if the journal cannot be read or opened
+     */
+    AddedFormsLog(Path path, int syncInterval, Consumer<String> replayed) throws IOException{
+        this.path = path;
+        lockChannel = FileChannel.open(path.resolveSibling(path.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try{
+            FileLock lock = lockChannel.lock();
+            try{
+                long length = Files.isRegularFile(path) ? replay(path, replayed) : 0;
+                try(FileChannel truncated = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+                    // drop the incomplete last line
+                    truncated.truncate(length);
+                }
+                open();
+            }
+            finally{
+                lock.release();
+            }
+        }
+        catch(IOException | RuntimeException e){
+            lockChannel.close();
+            throw e;
+        }
+
+        syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int period = Math.max(1, syncInterval);
+        syncer.scheduleWithFixedDelay(this::sync, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the complete lines of the journal.
+     * @param path: the journal file
+     * @param replayed: consumer of the forms
+     * @return the length of the complete lines in bytes
+     * @throws IOException if the journal cannot be read
+     */
+    private static long replay(Path path, Consumer<String> replayed) throws IOException{
+        byte[] bytes = Files.readAllBytes(path);
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++){
+            if (bytes[i] == '\n'){
+                if (i > start){
+                    replayed.accept(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Open the journal for the appending, the previously open channel is closed.
+     * Called with the lock file locked.
+     * @throws IOException if the journal cannot be opened
+     */
+    private void open() throws IOException{
+        FileChannel old = channel;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        dirty = false;
+        if (old != null){
+            old.close();
+        }
+    }
+
+    /**
+     * Append the form to the journal. The form is forced to the disk later.
+     * @param form: the added form, without line ends
+     * @throws IOException if the form cannot be written
+     */
+    synchronized void append(String form) throws IOException{
+        ByteBuffer line = ByteBuffer.wrap((form + "\n").getBytes(StandardCharsets.UTF_8));
+        FileLock lock = lockChannel.lock();
+        try{
+            if (!Files.exists(path) || !Objects.equals(Files.readAttributes(path, BasicFileAttributes.class).fileKey(), fileKey)){
+                // rewritten by the compaction in another process, which kept the forms written here
+                open();
+            }
+            while (line.hasRemaining()){
+                channel.write(line);
+            }
+        }
+        finally{
+            lock.release();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Force the written forms to the disk, if there are any.
+     * Runs without the lock, so it never delays the appending.
+     */
+    private void sync(){
+        if (!dirty){
+            return;
+        }
+        dirty = false;
+        try{
+            channel.force(false);
+        }
+        catch(ClosedChannelException e){
+            // replaced by the rewritten journal, which is already forced
+        }
+        catch(IOException e){
+            dirty = true;
+        }
+    }
+
+    /**
+     * Compaction of the journal into the snapshot of the lexicon.
+     */
+    interface Compaction {
+        /**
+         * Write the new snapshot with the forms of the journal.
+         * @return test of the forms stored in the new snapshot,
+         * which are removed from the journal
+         * @throws IOException if the snapshot cannot be written
+         */
+        Predicate<String> compact() throws IOException;
+    }
+
+    /**
+     * Run the compaction with the lock file locked, so that no process
+     * appends to the journal or compacts it meanwhile, and then replace
+     * the journal by its forms not stored in the new snapshot, atomically:
+     * the new journal is written and forced to a temporary file first.
+     * @param compaction: writes the new snapshot
+     * @throws IOException if the snapshot or the journal cannot be written
+     */
+    synchronized void compact(Compaction compaction) throws IOException{
+        FileLock lock = lockChannel.lock();
+        try{
+            Predicate<String> compacted = compaction.compact();
+            // the forms appended by the other processes stay
+            StringBuilder text = new StringBuilder();
+            if (Files.isRegularFile(path)){
+                replay(path, form -> {
+                    if (!compacted.test(form)){
+                        text.append(form).append('\n');
+                    }
+                });
+            }
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try(FileChannel rewritten = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()){
+                    rewritten.write(bytes);
+                }
+                rewritten.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(path.toAbsolutePath().getParent());
+            open();
+        }
+        finally{
+            lock.release();
+        }
+    }
+
+    /**
+     * Force the directory to the disk, so that a renaming in it is durable.
+     * @param directory: the directory
+     */
+    private static void forceDirectory(Path directory){
+        try(FileChannel opened = FileChannel.open(directory, StandardOpenOption.READ)){
+            opened.force(true);
+        }
+        catch(IOException e){
+            // some systems cannot open a directory, the renaming is forced later by the system
+        }
+    }
+
+    /**
+     * Stop the periodic forcing, wait for the running one, force the remaining
+     * forms to the disk and close the journal and the lock file.
+     * The periodic forcing is not interrupted, an interrupted forcing would
+     * close the channel; for the same reason the interrupt status of the calling
+     * thread is cleared during the closing and set again afterwards.
+     * If the channel was closed anyway (by an interrupted appending),
+     * the file is opened again to be forced.
+     * @throws IOException if the forms cannot be forced to the disk
+     */
+    void close() throws IOException{
+        boolean interrupted = Thread.interrupted();
+        syncer.shutdown();
+        try{
+            syncer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e){
+            interrupted = true;
+        }
+        try{
+            synchronized (this){
+                try(FileChannel last = channel.isOpen() ? channel : FileChannel.open(path, StandardOpenOption.WRITE)){
+                    last.force(false);
+                }
+                finally{
+                    channel.close();
+                    lockChannel.close();
+                }
+            }
+        }
+        finally{
+            if (interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * ISuggester generating the alternations of the word and keeping
+ * the known ones.
+ * The alternations are created in the automata of the lexicon:
+ * at every position only the characters allowed after the current prefix
+ * are tried, so only the known forms are created. The case variants
+ * of the word are alternated once each, as by the other engines
+ * (see CaseVariantSearch), instead of trying both cases of every letter.
+ * If the lexicon has no automata, all the alternations with the default
+ * Czech alphabet are generated and filtered by the lexicon; their number
+ * grows quickly with the length of the word and with the distance.
+ * The alternations in the automata are created by one walk with all
+ * the allowed edits and then ordered by their distances; without the
+ * automata they are generated lazily, one distance after another.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.WordAlternator
+ */
+public class AlternatorSuggester implements ISuggester {
+    @Override
+    public Stream<Suggestion> suggest(ILexicon lexicon, String word, int maxDistance){
+        List<IAutomaton> automata = lexicon.getAutomata();
+        if (automata.isEmpty()){
+            return IntStream.rangeClosed(1, maxDistance).boxed().
+                flatMap(distance -> WordAlternator.alternatedWithDistance(word, distance).
+                    filter(w -> lexicon.contains(w)).
+                    map(w -> new Suggestion(w, distance)));
+        }
+        // ordered by the distance, the word itself is not its alternation
+        return CaseVariantSearch.search(lexicon, word, maxDistance, (query, edits, consumer) -> {
+            Set<String> created = new HashSet<>();
+            for (IAutomaton automaton: automata){
+                WordAlternator.alternatedIn(automaton, query, edits, created::add);
+            }
+            for (String form: created){
+                consumer.accept(form, Levenshtein.distance(form, query, edits));
+            }
+        }).stream().
+            filter(suggestion -> suggestion.distance() > 0);
+    }
+}
@@ -0,0 +1,54 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * ISuggester searching the automata of the lexicon directly,
+ * so that only the real forms of the lexicon are ever visited.
+ * The subclasses provide the search of one automaton.
+ * If the lexicon has no automata, the alternations are generated
+ * and filtered instead.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#getAutomata
+ */
+public abstract class AutomatonSuggester implements ISuggester {
+    private static final ISuggester fallback = new AlternatorSuggester();
+
+    /**
+     * Find all the known forms whose Levenshtein distance from the given word
+     * is at most `maxDistance`, ordered by increasing distance
+     * (and alphabetically for the same distance),
+     * by searching all the automata of the lexicon.
+     * @param lexicon: the lexicon providing the automata
+     * @param word: the word to be alternated
+     * @param maxDistance: maximal Levenshtein distance of the found forms
+     * @return the found forms
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.CaseVariantSearch
+     */
+    @Override
+    public Stream<Suggestion> suggest(ILexicon lexicon, String word, int maxDistance){
+        List<IAutomaton> automata = lexicon.getAutomata();
+        if (automata.isEmpty()){
+            return fallback.suggest(lexicon, word, maxDistance);
+        }
+        return CaseVariantSearch.search(lexicon, word, maxDistance, (query, distance, consumer) -> {
+            for (IAutomaton automaton: automata){
+                search(automaton, query, distance, consumer);
+            }
+        }).stream();
+    }
+
+    /**
+     * Pass all the words of the automaton whose Levenshtein distance
+     * from the given word is at most `maxDistance`,
+     * together with the distance, to the given consumer.
+     * @param automaton: the automaton to be searched
+     * @param word: the word to be alternated
+     * @param maxDistance: maximal Levenshtein distance of the found words
+     * @param consumer: consumer of the found words and their distances
+     */
+    public abstract void search(IAutomaton automaton, CharSequence word, int maxDistance, ObjIntConsumer<String> consumer);
+}
@@ -0,0 +1,322 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * Bloom filter of the known forms, which rejects most of the unknown forms
+ * without walking the automaton of the lexicon (e.g. the alternations
+ * of a misspelled word, almost all of them unknown).
+ * It never rejects a known form, it accepts an unknown one with
+ * a small probability (about 1 % for 10 bits per form).
+ *
+ * Every form sets `hashes` bits chosen by double hashing of its 64-bit hash
+ * (FNV-1a with a final mixing), all of them in one block of 512 bits
+ * (a cache line) chosen by the high 32 bits of the hash, so a lookup reads
+ * only one cache line. The first bit in the block is given by the lowest
+ * 9 bits of the hash and the step by the next 9 bits, so the bits
+ * in the block do not depend on the choice of the block.
+ *
+ * The filter is sized for its capacity, the number of the forms it keeps
+ * the false positive rate for; the owner builds a larger filter when
+ * the number of the added forms reaches the capacity.
+ * All the case variants of a looked up form are hashed in one pass
+ * over its characters.
+ *
+ * The forms are only added, never removed. The additions have to be
+ * serialized, the lookups may run concurrently with them and see
+ * the added form after reading the volatile field the filter was
+ * published by.
+ *
+ * The format of the file: magic number (int), version (int),
+ * stamp of the snapshot the filter belongs to (long), number of the bits
+ * per form (int), number of the hashes (int), capacity (long), number
+ * of the added forms (long), number of the words of the bits (int)
+ * and the words (longs), big-endian.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#containsAnyVariant
+ */
+class BloomFilter {
+    /** Magic number at the beginning of the file, "SPBF".*/
+    private static final int magic = 0x53504246;
+    /** Version of the file format, increase on every incompatible change.*/
+    private static final int version = 2;
+    private static final int headerSize = 44;
+    /** The parameters of the FNV-1a hash.*/
+    private static final long offset = 0xcbf29ce484222325L;
+    private static final long prime = 0x100000001b3L;
+
+    /** Number of the longs of a block.*/
+    private static final int blockWords = 8;
+
+    private final long[] bits;
+    /** Mask of the block number, the number of the blocks is a power of two.*/
+    private final int blockMask;
+    private final int hashes;
+    private final int bitsPerForm;
+    /** The number of the forms the filter is sized for.*/
+    private final long capacity;
+    /** The number of the added forms, changed only by the serialized additions.*/
+    private long count;
+
+    private BloomFilter(long[] bits, int hashes, int bitsPerForm, long capacity, long count){
+        this.bits = bits;
+        this.blockMask = bits.length / blockWords - 1;
+        this.hashes = hashes;
+        this.bitsPerForm = bitsPerForm;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * Create an empty filter for the given number of forms.
+     * @param forms: the expected number of the forms
+     * @param bitsPerForm: the number of the bits per form, more bits
+     * give less false positives
+     * @return the filter
+     */
+    static BloomFilter create(long forms, int bitsPerForm){
+        // the number of the bits is rounded up to a power of two
+        long size = Long.highestOneBit(Math.max(64 * blockWords, forms * bitsPerForm - 1)) << 1;
+        if (size > 1L << 33){
+            throw new IllegalArgumentException("Too large Bloom filter, at most 1 GB.");
+        }
+        // the optimal number of the hashes is ln 2 * bits per form
+        int hashes = Math.max(1, (int) Math.round(Math.log(2) * size / Math.max(1, forms)));
+        return new BloomFilter(new long[(int) (size / 64)], Math.min(hashes, 16), bitsPerForm, forms, 0);
+    }
+
+    /**
+     * Get the number of the forms the filter is sized for.
+     * @return the capacity
+     */
+    long getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Get the number of the forms added to the filter.
+     * @return the number of the forms
+     */
+    long getCount(){
+        return count;
+    }
+
+    /**
+     * Create the filter of all the words of the automaton.
+     * @param automaton: the automaton
+     * @param bitsPerForm: the number of the bits per form
+     * @param extra: the number of the forms expected to be added later
+     * @return the filter
+     */
+    static BloomFilter of(IAutomaton automaton, int bitsPerForm, long extra){
+        BloomFilter filter = create(countWords(automaton, automaton.getRoot()) + extra, bitsPerForm);
+        automaton.forEachWord(filter::add);
+        return filter;
+    }
+
+    /**
+     * Count the words accepted from the given state.
+     * @param automaton: the automaton, a tree
+     * @param state: the state
+     * @return the number of the words
+     */
+    private static long countWords(IAutomaton automaton, int state){
+        long count = automaton.isFinal(state) ? 1 : 0;
+        for (int edge = automaton.getFirstEdge(state); edge != IAutomaton.NONE; edge = automaton.getNextEdge(edge)){
+            count += countWords(automaton, automaton.getTarget(edge));
+        }
+        return count;
+    }
+
+    /**
+     * Add the form to the filter.
+     * @param form: the form
+     */
+    void add(CharSequence form){
+        long h = offset;
+        for (int i = 0; i < form.length(); i++){
+            h = (h ^ form.charAt(i)) * prime;
+        }
+        set(mix(h));
+        count++;
+    }
+
+    /**
+     * Check, whether the form or one of its allowed case variants may be
+     * in the filter. Some more variants than the allowed ones are tested,
+     * which only rarely accepts an unknown form.
+     * @param form: the form
+     * @return false if no variant is in the filter, true if some may be
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.VariantLookup
+     */
+    boolean mightContainAnyVariant(CharSequence form){
+        int n = form.length();
+        if (n == 0 || VariantLookup.hasSpecialLowerCase()){
+            return true;
+        }
+        char first = form.charAt(0);
+        if (Character.isLowerCase(first)){
+            // the form is its only variant
+            long hash = (offset ^ first) * prime;
+            for (int i = 1; i < n; i++){
+                char c = form.charAt(i);
+                if (VariantLookup.needsStringLowerCase(c)){
+                    return true;
+                }
+                hash = (hash ^ c) * prime;
+            }
+            return test(mix(hash));
+        }
+        char firstLower = Character.toLowerCase(first);
+        // the form, lowercased first character with the original rest,
+        // lowercased form and the original first character with the lowercased rest;
+        // the last two only while no lowercase character is found
+        long original = (offset ^ first) * prime;
+        long decapitalized = (offset ^ firstLower) * prime;
+        long lowered = decapitalized;
+        long capitalized = original;
+        boolean upper = true;
+        if (VariantLookup.needsStringLowerCase(first)){
+            return true;
+        }
+        for (int i = 1; i < n; i++){
+            char c = form.charAt(i);
+            if (VariantLookup.needsStringLowerCase(c)){
+                return true;
+            }
+            original = (original ^ c) * prime;
+            decapitalized = (decapitalized ^ c) * prime;
+            if (upper){
+                if (Character.isLowerCase(c)){
+                    upper = false;
+                    continue;
+                }
+                char lower = Character.toLowerCase(c);
+                lowered = (lowered ^ lower) * prime;
+                capitalized = (capitalized ^ lower) * prime;
+            }
+        }
+        return test(mix(original))
+            || (firstLower != first && test(mix(decapitalized)))
+            || (upper && (test(mix(lowered)) || test(mix(capitalized))));
+    }
+
+    /**
+     * Set the bits of the hash.
+     * @param hash: the mixed hash of a form
+     */
+    private void set(long hash){
+        int block = ((int) (hash >>> 32) & blockMask) * blockWords;
+        int bit = (int) hash;
+        // only the lowest 9 bits of the bit and the step choose the bits of the block
+        int step = (bit >>> 9) | 1;
+        for (int i = 0; i < hashes; i++){
+            bits[block + ((bit >>> 6) & (blockWords - 1))] |= 1L << bit;
+            bit += step;
+        }
+    }
+
+    /**
+     * Check the bits of the hash.
+     * @param hash: the mixed hash of a form
+     * @return true if all the bits are set
+     */
+    private boolean test(long hash){
+        int block = ((int) (hash >>> 32) & blockMask) * blockWords;
+        int bit = (int) hash;
+        int step = (bit >>> 9) | 1;
+        for (int i = 0; i < hashes; i++){
+            if ((bits[block + ((bit >>> 6) & (blockWords - 1))] & (1L << bit)) == 0){
+                return false;
+            }
+            bit += step;
+        }
+        return true;
+    }
+
+    /**
+     * Spread the bits of the hash, so that every bit depends on all of them.
+     * @param h: the hash
+     * @return the mixed hash
+     */
+    private static long mix(long h){
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Read the filter from the file, if it belongs to the given snapshot
+     * and has the given number of the bits per form.
+     * @param path: the file
+     * @param stamp: the stamp of the snapshot
+     * @param bitsPerForm: the number of the bits per form
+     * @return the filter, or null if the file does not exist, has
+     * an incompatible format, belongs to another snapshot or was built
+     * with another number of the bits per form
+     * @throws IOException if the file cannot be read
+     */
+    static BloomFilter read(Path path, long stamp, int bitsPerForm) throws IOException{
+        if (!Files.isRegularFile(path)){
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining() && channel.read(header) >= 0){
+            }
+            header.flip();
+            if (header.remaining() < headerSize || header.getInt() != magic || header.getInt() != version
+                || header.getLong() != stamp || header.getInt() != bitsPerForm){
+                return null;
+            }
+            int hashes = header.getInt();
+            long capacity = header.getLong();
+            long count = header.getLong();
+            int words = header.getInt();
+            if (channel.size() != headerSize + words * 8L || Integer.bitCount(words) != 1 || words < blockWords){
+                return null;
+            }
+            ByteBuffer content = ByteBuffer.allocate(words * 8);
+            while (content.hasRemaining() && channel.read(content) >= 0){
+            }
+            content.flip();
+            long[] bits = new long[words];
+            content.asLongBuffer().get(bits);
+            return new BloomFilter(bits, hashes, bitsPerForm, capacity, count);
+        }
+    }
+
+    /**
+     * Write the filter to a temporary file, which then atomically
+     * replaces the given file.
+     * @param path: the file
+     * @param stamp: the stamp of the snapshot the filter belongs to
+     * @throws IOException if the file cannot be written
+     */
+    void write(Path path, long stamp) throws IOException{
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer buffer = ByteBuffer.allocate(headerSize + bits.length * 8);
+            buffer.putInt(magic).putInt(version).putLong(stamp).putInt(bitsPerForm).putInt(hashes);
+            buffer.putLong(capacity).putLong(count).putInt(bits.length);
+            buffer.asLongBuffer().put(bits);
+            buffer.position(buffer.limit());
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
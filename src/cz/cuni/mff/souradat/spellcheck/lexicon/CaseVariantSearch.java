@@ -0,0 +1,89 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Finding of the known forms close to a word, including the forms
+ * accepted by the lexicon only as a case variant
+ * (see ILexicon.containsAnyVariant).
+ * Such forms are found by searching for the corresponding case variants
+ * of the word and they are reported in the case of the given word
+ * (e.g. Kočky for Kočkx).
+ */
+class CaseVariantSearch {
+    /**
+     * Search for the exactly stored forms close to a query.
+     */
+    interface QuerySearch {
+        /**
+         * Pass all the stored forms whose Levenshtein distance from the query
+         * is at most `maxDistance`, together with the distance, to the consumer.
+         * @param query: the searched word
+         * @param maxDistance: maximal Levenshtein distance of the found forms
+         * @param consumer: consumer of the found forms and their distances
+         */
+        void search(String query, int maxDistance, ObjIntConsumer<String> consumer);
+    }
+
+    /**
+     * Find all the known forms whose Levenshtein distance from the given word
+     * is at most `maxDistance`, ordered by increasing distance
+     * (and alphabetically for the same distance).
+     * @param lexicon: the lexicon deciding which case variants are known
+     * @param word: the word to be alternated
+     * @param maxDistance: maximal Levenshtein distance of the found forms
+     * @param querySearch: the search of the exactly stored forms
+     * @return the found forms with their distances
+     */
+    static List<Suggestion> search(ILexicon lexicon, String word, int maxDistance, QuerySearch querySearch){
+        Map<String, Integer> found = new HashMap<>();
+        querySearch.search(word, maxDistance, (form, distance) -> found.merge(form, distance, Math::min));
+        if (!word.isEmpty() && Character.isUpperCase(word.charAt(0))){
+            String query = ILexicon.removeCapitalization(word);
+            querySearch.search(query, maxDistance, (form, distance) ->
+                addVariant(found, lexicon, word, capitalize(form), maxDistance));
+        }
+        if (ILexicon.isUpperCase(word)){
+            for (String query: new String[]{ILexicon.toLowerCaseIfUpperCase(word), ILexicon.toCapitalizedLowerCaseIfUpperCase(word)}){
+                querySearch.search(query, maxDistance, (form, distance) ->
+                    addVariant(found, lexicon, word, form.toUpperCase(), maxDistance));
+            }
+        }
+
+        List<Suggestion> result = new ArrayList<>(found.size());
+        found.forEach((form, distance) -> result.add(new Suggestion(form, distance)));
+        result.sort(Comparator.comparingInt(Suggestion::distance).thenComparing(Suggestion::form));
+        return result;
+    }
+
+    /**
+     * Add the case variant of a found form, if it is known
+     * and close enough to the word.
+     * @param found: the forms found so far with their distances
+     * @param lexicon: the lexicon
+     * @param word: the word to be alternated
+     * @param variant: the case variant of the found form
+     * @param maxDistance: maximal Levenshtein distance of the found forms
+     */
+    private static void addVariant(Map<String, Integer> found, ILexicon lexicon, String word, String variant, int maxDistance){
+        if (found.containsKey(variant)){
+            return;
+        }
+        int distance = Levenshtein.distance(variant, word, maxDistance);
+        if (distance <= maxDistance && lexicon.contains(variant)){
+            found.put(variant, distance);
+        }
+    }
+
+    /** Uppercase the first character of the given word.
+     * @param word: the word to be capitalized
+     * @return the capitalized word
+     */
+    private static String capitalize(String word){
+        if (word.isEmpty()){
+            return word;
+        }
+        return Character.toString(Character.toUpperCase(word.charAt(0))) + word.substring(1);
+    }
+}
@@ -0,0 +1,135 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.trie.Dawg;
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+import cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton;
+import cz.cuni.mff.souradat.spellcheck.trie.Trie;
+
+/**
+ * Read-only ILexicon that internally uses the minimal Dawg
+ * to store the known forms.
+ * It needs a fraction of the memory of the TrieLexicon,
+ * but no new forms can be added to it.
+ * The Dawg is stored in a memory-mapped snapshot.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon
+ * @see cz.cuni.mff.souradat.spellcheck.trie.Dawg
+ * @see cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton
+ */
+public class DawgLexicon implements ILexicon {
+    private static final String snapshotFilename = "data/dawglexicon.bin";
+    private static final String morfflexFilename = "data/czech-morfflex-2.0.tsv";
+
+    private MappedAutomaton lexicon;
+
+    public DawgLexicon(){
+        lexicon = loadLexicon();
+    }
+
+    /**
+     * Load the dawg lexicon, either from the snapshot file
+     * or directly build the dawg from the morfflex file
+     * (and store it in the snapshot file).
+     * @return the mapped snapshot of the Dawg
+     * @see cz.cuni.mff.souradat.spellcheck.trie.Dawg
+     */
+    private MappedAutomaton loadLexicon(){
+        Path snapshot = Path.of(snapshotFilename);
+        File f = snapshot.toFile();
+
+        if(f.exists() && !f.isDirectory()) {
+            try{
+                return openSnapshot(snapshot);
+            }
+            catch(IOException e){
+                // the snapshot was created by an older, incompatible version,
+                // build it again
+            }
+        }
+        try{
+            Dawg built = loadMorfflex();
+            long start = System.nanoTime();
+            MappedAutomaton.write(built, true, snapshot);
+            long stored = System.nanoTime() - start;
+            Metrics.recordPhase("snapshot write", stored);
+            System.out.printf("Lexicon snapshot stored in %.1f s.%n", stored / 1e9);
+            return openSnapshot(snapshot);
+        }
+        catch(IOException e){
+            throw new Error("Unsuccessful storing of the lexicon snapshot.", e);
+        }
+    }
+
+    /**
+     * Open the snapshot file and record the duration of the opening.
+     * @param snapshot: path to the snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the snapshot cannot be read or has a wrong format
+     */
+    private static MappedAutomaton openSnapshot(Path snapshot) throws IOException{
+        long start = System.nanoTime();
+        MappedAutomaton automaton = MappedAutomaton.open(snapshot);
+        Metrics.recordPhase("snapshot open", System.nanoTime() - start);
+        return automaton;
+    }
+
+    @Override
+    /**
+     * Check, whether the given form or one of its allowed variant
+     * is a known word form.
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#containsAnyVariant
+     */
+    public boolean contains(String form) {
+        return VariantLookup.containsAnyVariant(lexicon, form);
+    }
+
+    @Override
+    public boolean contains(char[] chars, int offset, int length){
+        return VariantLookup.containsAnyVariant(lexicon, CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public List<IAutomaton> getAutomata(){
+        return List.of(lexicon);
+    }
+
+    @Override
+    public long getFingerprint(){
+        return lexicon.getStamp();
+    }
+
+    @Override
+    /**
+     * The lexicon is read-only.
+     * @throws UnsupportedOperationException always
+     */
+    public boolean addForm(String form) {
+        throw new UnsupportedOperationException("The DAWG lexicon is read-only, no forms can be added to it.");
+    }
+
+    /**
+     * Parse the morfflex file and build a Dawg
+     * from the word forms contained in it.
+     * The forms are first collected in a Trie,
+     * which yields them sorted and without duplicates.
+     * @return the built Dawg containing
+     * all the word forms present in the morfflex file
+     * @see cz.cuni.mff.souradat.spellcheck.trie.Dawg
+     */
+    private Dawg loadMorfflex(){
+        Trie trie = Morfflex.loadTrie(morfflexFilename);
+        long start = System.nanoTime();
+        Dawg.Builder builder = new Dawg.Builder();
+        trie.forEachWord(builder::add);
+        Dawg dawg = builder.build();
+        long minimizing = System.nanoTime() - start;
+        Metrics.recordPhase("dawg build", minimizing);
+        System.out.printf("Dawg minimized in %.1f s.%n", minimizing / 1e9);
+        return dawg;
+    }
+}
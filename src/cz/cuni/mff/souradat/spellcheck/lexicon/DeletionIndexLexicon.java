@@ -0,0 +1,741 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+import cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton;
+
+/**
+ * ILexicon with a precomputed index of deletions (SymSpell-style),
+ * which is also an ISuggester.
+ * For every known form, all the strings created by deleting at most
+ * `maxDistance` characters from the form (truncated to `prefixLength`
+ * characters) are computed and the index maps every such deletion
+ * to the ids of the forms. Two words have Levenshtein distance at most k
+ * only if they share a deletion of at most k characters, so finding
+ * the suggestions needs only one hash probe for every deletion of the word,
+ * followed by the verification of the found forms.
+ *
+ * Larger `maxDistance` and `prefixLength` mean larger index and fewer
+ * candidates to be verified. They are set by the properties
+ * `spellcheck.index.distance` (default 2) and `spellcheck.index.prefix`
+ * (default 7).
+ *
+ * The known forms are checked by the underlying TrieLexicon.
+ * The index of its snapshot is stored in a binary file next to the snapshot
+ * and it is built again only if the snapshot or the parameters change.
+ * The file is memory-mapped in chunks and probed directly, as the snapshot,
+ * so it can be larger than 2 GB and the processes using it share its pages.
+ * It is built through a mapped file as well, without the whole table
+ * in the memory. The searches reuse primitive sets of the deletions
+ * and of the candidate forms of their thread.
+ *
+ * The format of the index file (all numbers big-endian, aligned to their size):
+ *    - header: magic number (int), format version (int), maximal distance
+ *      (int), prefix length (int), stamp of the snapshot (long), number
+ *      of the forms (int), padding (int), number of the characters (long),
+ *      capacity of the table (long), number of the postings (long)
+ *    - the offsets of the forms in the characters, the last one is their
+ *      number (long)
+ *    - the characters of the forms one after another (char)
+ *    - open addressing table of the hashes of the deletions, 0 means
+ *      empty slot (long)
+ *    - for every slot the start of its postings, the last item is their
+ *      number (long)
+ *    - the ids of the forms of the slots one after another (int)
+ * The forms added later are indexed in the memory. The additions are
+ * serialized by a lock and they never block the searching: the list of the
+ * added forms is replaced by its extended copy and the ids of the forms
+ * of a deletion are replaced by the extended copy in a concurrent map,
+ * before the new id appears in the map, the form is already in the list.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon
+ */
+public class DeletionIndexLexicon implements ILexicon, ISuggester {
+    private static final String indexFilename = "data/deletionindex.bin";
+    /** Magic number at the beginning of the index file, "SPDI".*/
+    private static final int magic = 0x53504449;
+    /** Version of the index format, increase on every incompatible change.*/
+    private static final int version = 2;
+    /** Size of the header: magic, version, parameters, snapshot stamp and section sizes.*/
+    private static final int headerSize = 4 * 4 + 8 + 4 * 2 + 8 * 3;
+    private static final ISuggester fallback = new LevenshteinSearch();
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final TrieLexicon lexicon;
+    private final int maxDistance;
+    private final int prefixLength;
+    /** Stamp of the indexed snapshot of the underlying lexicon.*/
+    private final long snapshotStamp;
+
+    /** The mapped index file.*/
+    private MappedChunks index;
+    /** Positions of the sections of the index file.*/
+    private Layout layout;
+    /** Number of the indexed forms, the ids of the added forms follow them.*/
+    private int formCount;
+    /** Number of the slots of the table of the deletions, a power of two.*/
+    private long capacity;
+
+    /** Forms added after the index was built, their ids follow the indexed forms.
+     * Never changed after it is published.*/
+    private volatile String[] addedForms = new String[0];
+    /** Ids of the added forms for the hashes of their deletions, the arrays are never changed.*/
+    private final ConcurrentHashMap<Long, int[]> addedKeys = new ConcurrentHashMap<>();
+    private final Object addLock = new Object();
+
+    /**
+     * Positions of the sections of the index file.
+     * @param offsets: the offsets of the forms
+     * @param chars: the characters of the forms
+     * @param keys: the table of the hashes of the deletions
+     * @param starts: the starts of the postings of the slots
+     * @param postings: the ids of the forms
+     * @param size: the size of the file
+     */
+    private record Layout(long offsets, long chars, long keys, long starts, long postings, long size){
+        /**
+         * Compute the positions of the sections.
+         * @param formCount: the number of the forms
+         * @param charCount: the number of the characters of the forms
+         * @param capacity: the number of the slots of the table
+         * @param postingCount: the number of the postings
+         * @return the layout of the file
+         */
+        static Layout of(int formCount, long charCount, long capacity, long postingCount){
+            long offsets = headerSize;
+            long chars = offsets + 8L * (formCount + 1L);
+            long keys = (chars + 2 * charCount + 7) & ~7L;
+            long starts = keys + 8 * capacity;
+            long postings = starts + 8 * (capacity + 1);
+            return new Layout(offsets, chars, keys, starts, postings, postings + 4 * postingCount);
+        }
+    }
+
+    /** Working arrays of one thread, reused by the searches.*/
+    private static class Scratch {
+        /** The hashes of the deletions passed so far.*/
+        final LongSet deletions = new LongSet();
+        /** The ids of the candidate forms increased by one.*/
+        final LongSet candidates = new LongSet();
+        /** The deletions of the word, one buffer for every number of the deleted characters.*/
+        char[][] levels = new char[0][];
+        /** The characters of the verified form.*/
+        char[] form = new char[32];
+
+        /**
+         * Make sure there are the buffers of the deletions.
+         * @param count: the number of the buffers
+         * @param length: the length of the deleted word
+         */
+        void ensureLevels(int count, int length){
+            if (levels.length < count || levels[0].length < length){
+                levels = new char[Math.max(count, levels.length)][Math.max(length, 16)];
+            }
+        }
+    }
+
+    /**
+     * Reusable open addressing set of nonzero longs, which keeps the slots
+     * of its members, so that it is cleared in the time of its size.
+     */
+    private static final class LongSet {
+        private long[] table = new long[64];
+        private long[] members = new long[32];
+        private int[] slots = new int[32];
+        private int size;
+
+        /**
+         * Add the value to the set.
+         * @param value: the value, not 0
+         * @return true if it was not in the set
+         */
+        boolean add(long value){
+            int mask = table.length - 1;
+            int slot = mix(value) & mask;
+            while (table[slot] != 0){
+                if (table[slot] == value){
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == members.length){
+                members = Arrays.copyOf(members, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            table[slot] = value;
+            members[size] = value;
+            slots[size++] = slot;
+            if (size * 2 > table.length){
+                grow();
+            }
+            return true;
+        }
+
+        /**
+         * Double the table.
+         */
+        private void grow(){
+            table = new long[table.length * 2];
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++){
+                int slot = mix(members[i]) & mask;
+                while (table[slot] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = members[i];
+                slots[i] = slot;
+            }
+        }
+
+        /**
+         * Spread the bits of a value, so that the low bits depend on all of them.
+         * @param value: the value
+         * @return the mixed value
+         */
+        private static int mix(long value){
+            int h = (int) (value ^ (value >>> 32)) * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+
+        int size(){
+            return size;
+        }
+
+        /**
+         * Get the member in the order of the addition.
+         * @param i: the index of the member, from 0 to `size() - 1`
+         * @return the member
+         */
+        long get(int i){
+            return members[i];
+        }
+
+        /**
+         * Remove all the members.
+         */
+        void clear(){
+            for (int i = 0; i < size; i++){
+                table[slots[i]] = 0;
+            }
+            size = 0;
+        }
+    }
+
+    public DeletionIndexLexicon(){
+        this(new TrieLexicon(), Integer.getInteger("spellcheck.index.distance", 2), Integer.getInteger("spellcheck.index.prefix", 7));
+    }
+
+    /**
+     * Create the index for the given lexicon.
+     * @param lexicon: the underlying lexicon
+     * @param maxDistance: the maximal number of deleted characters
+     * @param prefixLength: the number of characters of the forms that are indexed
+     */
+    public DeletionIndexLexicon(TrieLexicon lexicon, int maxDistance, int prefixLength){
+        this.lexicon = lexicon;
+        this.maxDistance = maxDistance;
+        this.prefixLength = prefixLength;
+        // the snapshot and the added forms taken at once, the snapshot can be replaced by a compaction
+        List<IAutomaton> automata = lexicon.getAutomata();
+        MappedAutomaton snapshot = (MappedAutomaton) automata.get(0);
+        this.snapshotStamp = snapshot.getStamp();
+        loadIndex(snapshot);
+        for (IAutomaton added: automata.subList(1, automata.size())){
+            added.forEachWord(this::indexAddedForm);
+        }
+    }
+
+    @Override
+    public boolean contains(String form){
+        return lexicon.contains(form);
+    }
+
+    @Override
+    public boolean contains(char[] chars, int offset, int length){
+        return lexicon.contains(chars, offset, length);
+    }
+
+    @Override
+    public boolean addForm(String form){
+        synchronized (addLock){
+            boolean added = lexicon.addForm(form);
+            if (added){
+                indexAddedForm(form);
+            }
+            return added;
+        }
+    }
+
+    @Override
+    public List<IAutomaton> getAutomata(){
+        return lexicon.getAutomata();
+    }
+
+    @Override
+    public long getFingerprint(){
+        return lexicon.getFingerprint();
+    }
+
+    @Override
+    public void close(){
+        lexicon.close();
+    }
+
+    /**
+     * Find the known forms close to the given word using the index.
+     * The distances larger than the indexed distance are searched
+     * by the LevenshteinSearch.
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.CaseVariantSearch
+     */
+    @Override
+    public Stream<Suggestion> suggest(ILexicon lexicon, String word, int maxDistance){
+        if (maxDistance > this.maxDistance){
+            return fallback.suggest(lexicon, word, maxDistance);
+        }
+        return CaseVariantSearch.search(lexicon, word, maxDistance, this::search).stream();
+    }
+
+    /**
+     * Pass all the indexed forms whose Levenshtein distance from the query
+     * is at most `distance`, together with the distance, to the consumer.
+     * @param query: the searched word
+     * @param distance: maximal Levenshtein distance of the found forms
+     * @param consumer: consumer of the found forms and their distances
+     */
+    private void search(String query, int distance, ObjIntConsumer<String> consumer){
+        Scratch local = scratch.get();
+        LongSet candidates = local.candidates;
+        candidates.clear();
+        boolean anyAdded = !addedKeys.isEmpty();
+        forEachDeletion(query, distance, key -> {
+            long slot = findSlot(index, layout.keys(), capacity, key);
+            if (index.getLong(layout.keys() + 8 * slot) != 0){
+                long end = index.getLong(layout.starts() + 8 * (slot + 1));
+                for (long i = index.getLong(layout.starts() + 8 * slot); i < end; i++){
+                    candidates.add(index.getInt(layout.postings() + 4 * i) + 1L);
+                }
+            }
+            int[] added = anyAdded ? addedKeys.get(key) : null;
+            if (added != null){
+                for (int id: added){
+                    candidates.add(id + 1L);
+                }
+            }
+        });
+        for (int i = 0; i < candidates.size(); i++){
+            CharSequence form = getForm((int) (candidates.get(i) - 1), local);
+            int d = Levenshtein.distance(form, query, distance);
+            if (d <= distance){
+                consumer.accept(form.toString(), d);
+            }
+        }
+    }
+
+    /**
+     * Get the form with the given id, the indexed forms are copied
+     * to the buffer of the thread.
+     * @param id: id of the form
+     * @param local: the working arrays of the thread
+     * @return the form, valid until the next call
+     */
+    private CharSequence getForm(int id, Scratch local){
+        if (id >= formCount){
+            return addedForms[id - formCount];
+        }
+        long start = index.getLong(layout.offsets() + 8L * id);
+        int length = (int) (index.getLong(layout.offsets() + 8L * (id + 1)) - start);
+        if (local.form.length < length){
+            local.form = new char[Math.max(length, 2 * local.form.length)];
+        }
+        for (int i = 0; i < length; i++){
+            local.form[i] = index.getChar(layout.chars() + 2 * (start + i));
+        }
+        return CharBuffer.wrap(local.form, 0, length);
+    }
+
+    /**
+     * Add a form that is not in the snapshot to the in-memory part of the index.
+     * @param form: the added form
+     */
+    private void indexAddedForm(String form){
+        String[] forms = Arrays.copyOf(addedForms, addedForms.length + 1);
+        forms[forms.length - 1] = form;
+        int id = formCount + addedForms.length;
+        addedForms = forms;
+        forEachDeletion(form, maxDistance, key -> addedKeys.merge(key, new int[]{id}, DeletionIndexLexicon::concat));
+    }
+
+    /**
+     * Concatenate two arrays of ids.
+     * @param first: the first array
+     * @param second: the second array
+     * @return the new array with the ids of both of them
+     */
+    private static int[] concat(int[] first, int[] second){
+        int[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    /**
+     * Pass the hashes of all the unique strings created by deleting at most
+     * `distance` characters from the prefix of the given word to the consumer.
+     * The buffers of the deletions and the set of their hashes are reused.
+     * @param word: the word
+     * @param distance: maximal number of deleted characters
+     * @param consumer: consumer of the hashes
+     */
+    private void forEachDeletion(CharSequence word, int distance, LongConsumer consumer){
+        Scratch local = scratch.get();
+        int length = Math.min(word.length(), prefixLength);
+        local.ensureLevels(distance + 1, length);
+        char[] chars = local.levels[0];
+        for (int i = 0; i < length; i++){
+            chars[i] = word.charAt(i);
+        }
+        local.deletions.clear();
+        forEachDeletion(local.levels, 0, length, 0, distance, local.deletions, consumer);
+    }
+
+    /**
+     * Pass the hash of the given string and of all the strings created
+     * by deleting characters at positions not smaller than `from`.
+     * @param levels: the buffers of the deletions, the string is in the buffer `level`
+     * @param level: the number of the deleted characters so far
+     * @param length: the length of the string
+     * @param from: the first position that can be deleted
+     * @param distance: maximal number of deleted characters
+     * @param seen: the hashes passed so far
+     * @param consumer: consumer of the hashes
+     */
+    private static void forEachDeletion(char[][] levels, int level, int length, int from, int distance, LongSet seen, LongConsumer consumer){
+        char[] chars = levels[level];
+        long key = hash(chars, length);
+        if (seen.add(key)){
+            consumer.accept(key);
+        }
+        if (distance == 0){
+            return;
+        }
+        char[] shorter = levels[level + 1];
+        for (int i = from; i < length; i++){
+            System.arraycopy(chars, 0, shorter, 0, i);
+            System.arraycopy(chars, i + 1, shorter, i, length - i - 1);
+            forEachDeletion(levels, level + 1, length - 1, i, distance - 1, seen, consumer);
+        }
+    }
+
+    /**
+     * Compute the 64-bit hash of the string (FNV-1a with a final mixing),
+     * never equal to 0.
+     * @param chars: the characters of the string
+     * @param length: the length of the string
+     * @return the hash
+     */
+    private static long hash(char[] chars, int length){
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++){
+            h ^= chars[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= length;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Find the slot of the given key in the mapped open addressing table,
+     * or the empty slot where it should be inserted.
+     * @param table: the mapped file with the table
+     * @param position: the position of the table in the file
+     * @param capacity: the number of the slots, a power of two
+     * @param key: the key
+     * @return the slot
+     */
+    private static long findSlot(MappedChunks table, long position, long capacity, long key){
+        long mask = capacity - 1;
+        long slot = (key ^ (key >>> 32)) & mask;
+        long stored;
+        while ((stored = table.getLong(position + 8 * slot)) != 0 && stored != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Map the index from the index file, or build it from the snapshot
+     * of the underlying lexicon (and store it in the index file)
+     * if the file does not exist or it does not match the snapshot.
+     * @param snapshot: the snapshot of the underlying lexicon
+     */
+    private void loadIndex(IAutomaton snapshot){
+        Path path = Path.of(indexFilename);
+        try{
+            long start = System.nanoTime();
+            if (Files.isRegularFile(path) && readIndex(path)){
+                Metrics.recordPhase("index read", System.nanoTime() - start);
+                return;
+            }
+            start = System.nanoTime();
+            buildIndex(snapshot, path);
+            Metrics.recordPhase("index build", System.nanoTime() - start);
+            if (!readIndex(path)){
+                throw new IOException("The built deletion index cannot be read.");
+            }
+        }
+        catch(IOException | UncheckedIOException e){
+            throw new Error("Unsuccessful loading of the deletion index.", e);
+        }
+    }
+
+    /**
+     * Table of the hashes of the deletions with their counts in a temporary
+     * mapped file, used while the index is built. It is doubled into
+     * a new file when it is half full.
+     */
+    private static class KeyCounts {
+        /** Bytes of a slot: the hash and its count.*/
+        private static final int slotSize = 16;
+        private final Path directory;
+        private Path file;
+        private MappedChunks table;
+        private long capacity;
+        private long used;
+
+        /**
+         * Create the empty table.
+         * @param directory: the directory of the temporary file
+         * @param capacity: the initial number of the slots, a power of two
+         * @throws IOException if the file cannot be created
+         */
+        KeyCounts(Path directory, long capacity) throws IOException{
+            this.directory = directory;
+            this.capacity = capacity;
+            file = Files.createTempFile(directory, "deletionindex", ".keys");
+            table = map(file, capacity);
+        }
+
+        /**
+         * Map a new temporary file of the given number of slots, filled with zeros.
+         * @param file: the file
+         * @param capacity: the number of the slots
+         * @return the mapped file
+         * @throws IOException if the file cannot be mapped
+         */
+        private static MappedChunks map(Path file, long capacity) throws IOException{
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                return new MappedChunks(channel, FileChannel.MapMode.READ_WRITE, capacity * slotSize);
+            }
+        }
+
+        /**
+         * Find the slot of the key, or the empty slot where it should be inserted.
+         * @param key: the key
+         * @return the slot
+         */
+        long find(long key){
+            long mask = capacity - 1;
+            long slot = (key ^ (key >>> 32)) & mask;
+            long stored;
+            while ((stored = table.getLong(slot * slotSize)) != 0 && stored != key){
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Increase the count of the key, insert it if needed.
+         * @param key: the hash of a deletion
+         * @throws UncheckedIOException if the table cannot be doubled
+         */
+        void increment(long key){
+            long slot = find(key);
+            if (table.getLong(slot * slotSize) == 0){
+                table.putLong(slot * slotSize, key);
+                used++;
+            }
+            table.putLong(slot * slotSize + 8, table.getLong(slot * slotSize + 8) + 1);
+            if (used * 2 > capacity){
+                try{
+                    grow();
+                }
+                catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Double the table into a new temporary file.
+         * @throws IOException if the file cannot be written
+         */
+        private void grow() throws IOException{
+            MappedChunks old = table;
+            Path oldFile = file;
+            long oldCapacity = capacity;
+            capacity *= 2;
+            file = Files.createTempFile(directory, "deletionindex", ".keys");
+            table = map(file, capacity);
+            for (long i = 0; i < oldCapacity; i++){
+                long key = old.getLong(i * slotSize);
+                if (key != 0){
+                    long slot = find(key);
+                    table.putLong(slot * slotSize, key);
+                    table.putLong(slot * slotSize + 8, old.getLong(i * slotSize + 8));
+                }
+            }
+            Files.delete(oldFile);
+        }
+
+        long key(long slot){
+            return table.getLong(slot * slotSize);
+        }
+
+        long count(long slot){
+            return table.getLong(slot * slotSize + 8);
+        }
+
+        void setCount(long slot, long count){
+            table.putLong(slot * slotSize + 8, count);
+        }
+
+        /**
+         * Delete the temporary file.
+         * @throws IOException if the file cannot be deleted
+         */
+        void delete() throws IOException{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Build the index of all the forms of the snapshot of the underlying lexicon
+     * and store it in the index file.
+     * The forms are walked in three passes: the first one counts them,
+     * the second one counts the forms of every deletion in a temporary
+     * table, the third one writes the forms and fills the postings
+     * in the mapped index file.
+     * The index is first written to a temporary file,
+     * which then atomically replaces the given file.
+     * @param snapshot: the snapshot of the underlying lexicon
+     * @param path: the index file
+     * @throws IOException if the index cannot be written
+     */
+    private void buildIndex(IAutomaton snapshot, Path path) throws IOException{
+        int[] forms = {0};
+        long[] chars = {0};
+        snapshot.forEachWord(form -> {
+            forms[0] = Math.addExact(forms[0], 1);
+            chars[0] += form.length();
+        });
+        int formCount = forms[0];
+
+        // count the forms of every deletion
+        Path directory = path.toAbsolutePath().getParent();
+        KeyCounts counts = new KeyCounts(directory, Integer.highestOneBit(Math.max(formCount, 64)) * 16L);
+        try{
+            snapshot.forEachWord(form -> forEachDeletion(form, maxDistance, counts::increment));
+            long capacity = counts.capacity;
+            long postingCount = 0;
+            for (long slot = 0; slot < capacity; slot++){
+                postingCount += counts.count(slot);
+            }
+            Layout layout = Layout.of(formCount, chars[0], capacity, postingCount);
+
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.deleteIfExists(temporary);
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                MappedChunks out = new MappedChunks(channel, FileChannel.MapMode.READ_WRITE, layout.size());
+                out.putInt(0, magic);
+                out.putInt(4, version);
+                out.putInt(8, maxDistance);
+                out.putInt(12, prefixLength);
+                out.putLong(16, snapshotStamp);
+                out.putInt(24, formCount);
+                out.putLong(32, chars[0]);
+                out.putLong(40, capacity);
+                out.putLong(48, postingCount);
+
+                // the keys and the starts of their postings, the counts become the cursors of the filling
+                long start = 0;
+                for (long slot = 0; slot < capacity; slot++){
+                    long count = counts.count(slot);
+                    out.putLong(layout.keys() + 8 * slot, counts.key(slot));
+                    out.putLong(layout.starts() + 8 * slot, start);
+                    counts.setCount(slot, start);
+                    start += count;
+                }
+                out.putLong(layout.starts() + 8 * capacity, start);
+
+                // the forms and the postings, in the same order as counted
+                int[] id = {0};
+                long[] offset = {0};
+                snapshot.forEachWord(form -> {
+                    out.putLong(layout.offsets() + 8L * id[0], offset[0]);
+                    for (int i = 0; i < form.length(); i++){
+                        out.putChar(layout.chars() + 2 * (offset[0] + i), form.charAt(i));
+                    }
+                    offset[0] += form.length();
+                    int formId = id[0]++;
+                    forEachDeletion(form, maxDistance, key -> {
+                        long slot = counts.find(key);
+                        long cursor = counts.count(slot);
+                        out.putInt(layout.postings() + 4 * cursor, formId);
+                        counts.setCount(slot, cursor + 1);
+                    });
+                });
+                out.putLong(layout.offsets() + 8L * formCount, offset[0]);
+                out.force();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally{
+            counts.delete();
+        }
+    }
+
+    /**
+     * Map the index from the given file.
+     * @param path: the index file
+     * @return true if the index was mapped, false if the file was created
+     * for another snapshot, with other parameters, by another version
+     * or it is truncated
+     * @throws IOException if the file cannot be read
+     */
+    private boolean readIndex(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long size = channel.size();
+            if (size < headerSize){
+                return false;
+            }
+            MappedChunks mapped = new MappedChunks(channel, FileChannel.MapMode.READ_ONLY, size);
+            if (mapped.getInt(0) != magic || mapped.getInt(4) != version
+                || mapped.getInt(8) != maxDistance || mapped.getInt(12) != prefixLength
+                || mapped.getLong(16) != snapshotStamp){
+                return false;
+            }
+            Layout mappedLayout = Layout.of(mapped.getInt(24), mapped.getLong(32), mapped.getLong(40), mapped.getLong(48));
+            if (mappedLayout.size() != size){
+                return false;
+            }
+            index = mapped;
+            layout = mappedLayout;
+            formCount = mapped.getInt(24);
+            capacity = mapped.getLong(40);
+            return true;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package cz.cuni.mff.souradat.spellcheck.lexicon;
 
+import java.util.List;
+import java.util.function.Predicate;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
 /**Represents a set of known word forms and provides useful methods.
  */
 public interface ILexicon {
@@ -10,6 +15,18 @@ public interface ILexicon {
      */
     public boolean contains(String form);
 
+    /**
+     * Checks, whether the word form given by a slice of a char array
+     * is present in the lexicon, the same way as `contains(String)`.
+     * @param chars: the array containing the form
+     * @param offset: the position of the first character of the form
+     * @param length: the length of the form
+     * @return true if the word form is present, false otherwise
+     */
+    public default boolean contains(char[] chars, int offset, int length){
+        return contains(new String(chars, offset, length));
+    }
+
     /**
      * Adds the given word form to the lexicon.
      * @param form: the word form to be added.
@@ -19,6 +36,61 @@ public interface ILexicon {
      */
     public boolean addForm(String form);
 
+    /**
+     * Get the automata that store exactly the known forms
+     * (without their case variants), so that the suggestion code
+     * can walk them directly.
+     * @return the automata, or an empty list if the lexicon
+     * does not use any automata
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.LevenshteinSearch
+     */
+    public default List<IAutomaton> getAutomata(){
+        return List.of();
+    }
+
+    /**
+     * Get a fingerprint of the current content of the lexicon,
+     * which changes whenever the set of the known forms changes
+     * (e.g. the lexicon is rebuilt or a form is added).
+     * Used to decide whether data derived from the lexicon
+     * and stored between the runs can be reused.
+     * @return the fingerprint, or 0 if the content cannot be identified
+     * (then no stored data should be reused)
+     */
+    public default long getFingerprint(){
+        return 0;
+    }
+
+    /**
+     * Store everything that should survive the end of the program
+     * (e.g. the added forms) and release the resources of the lexicon.
+     * The lexicon should not be changed after it is closed.
+     */
+    public default void close(){
+    }
+
+    /**
+     * Check, whether the given form or one of its allowed variant
+     * is accepted by the given exact-match predicate.
+     * The allowed variants:
+     *    - the form itself
+     *    - the form without capitalized first character (for the forms at
+     *      the beginning of the sentence)
+     *    - the form completely lowercased if it was completely uppercased
+     *    - the form lowercased but with capital first letter if it was
+     *      completely uppercased
+     * @param form: the word form to be checked.
+     * @param containsExactly: checks the presence of exactly the given form.
+     * @return true if any of the variants is accepted, false otherwise
+     */
+    public static boolean containsAnyVariant(String form, Predicate<String> containsExactly){
+        return 
+        containsExactly.test(form) ||
+        containsExactly.test(removeCapitalization(form)) ||
+        containsExactly.test(toLowerCaseIfUpperCase(form)) ||
+        containsExactly.test(toCapitalizedLowerCaseIfUpperCase(form));
+    }
+
     /** Lowercase the first character of the given word.
      * @param word: the word whose first character should be lowercased.
      * @return the word with lowercased first character,
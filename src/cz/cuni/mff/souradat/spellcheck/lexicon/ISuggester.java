@@ -0,0 +1,19 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.stream.Stream;
+
+/**Finds the known word forms close to a given word.
+ */
+public interface ISuggester {
+    /**
+     * Find the known forms whose Levenshtein distance from the given word
+     * is at most `maxDistance`, ordered by increasing distance.
+     * The stream may be lazy, so the search can be stopped
+     * by not consuming the rest of it.
+     * @param lexicon: the lexicon of the known forms
+     * @param word: the word to be alternated
+     * @param maxDistance: maximal Levenshtein distance of the found forms
+     * @return finite stream of the unique found forms with their distances
+     */
+    public Stream<Suggestion> suggest(ILexicon lexicon, String word, int maxDistance);
+}
@@ -1,72 +1,219 @@
 package cz.cuni.mff.souradat.spellcheck.lexicon;
 
 
-import java.util.*;
-
 /** Class for computing Levenshtein distance of 2 strings.
- * Heavily based on https://www.geeksforgeeks.org/java-program-to-implement-levenshtein-distance-computing-algorithm/
+ * Strings up to 64 characters are compared by the bit-parallel algorithm
+ * (Myers 1999, in the form of Hyyrö 2001 for the edit distance),
+ * longer ones by the dynamic programming over two rows.
+ * When only the distances up to some bound are interesting,
+ * `distance(str1, str2, maxDistance)` computes only a diagonal band
+ * of the dynamic programming table and stops as soon as the bound is exceeded.
+ * No memory is allocated per call, the working arrays are reused per thread.
  */
 public class Levenshtein {
+    /** The longest string compared by the bit-parallel algorithm.*/
+    private static final int maxBitParallelLength = Long.SIZE;
+    /** Characters below this value have a directly indexed match mask,
+     * it covers Latin-1 and Latin Extended-A (all the Czech letters).*/
+    private static final int directAlphabetSize = 0x180;
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /** Working arrays of one thread.*/
+    private static class Scratch {
+        /** Match masks of the characters of the pattern,
+         * all zero between the computations.*/
+        final long[] masks = new long[directAlphabetSize];
+        int[] previous = new int[16];
+        int[] current = new int[16];
+
+        /** Make sure the rows have at least the given length.
+         * @param length: the needed length
+         */
+        void ensureRows(int length){
+            if (previous.length < length){
+                previous = new int[Math.max(length, 2 * previous.length)];
+                current = new int[previous.length];
+            }
+        }
+    }
+
     /**Computes Levenshtein distance of 2 strings.
-     * Uses dynamic programming.
      * @param str1: the first string
      * @param str2: the second string
      * @return the Levenshtein distance of the given strings
      */
-    public static int distance(String str1, String str2) {
-        int[][] dp = new int[str1.length() + 1][str2.length() + 1];
-        for (int i = 0; i <= str1.length(); i++){
-            for (int j = 0; j <= str2.length(); j++) {
+    public static int distance(CharSequence str1, CharSequence str2) {
+        CharSequence pattern = str1.length() <= str2.length() ? str1 : str2;
+        CharSequence text = pattern == str1 ? str2 : str1;
+        if (pattern.length() <= maxBitParallelLength){
+            return bitParallelDistance(pattern, text);
+        }
+        return rowsDistance(pattern, text);
+    }
 
-                // If str1 is empty, all characters of
-                // str2 are inserted into str1, which is of
-                // the only possible method of conversion
-                // with minimum operations.
-                if (i == 0) {
-                    dp[i][j] = j;
-                }
+    /**Computes Levenshtein distance of 2 strings, if it is at most the given bound.
+     * Only the diagonal band of width 2 * maxDistance + 1 of the dynamic
+     * programming table is computed and the computation ends as soon as
+     * all the values of a row exceed the bound.
+     * @param str1: the first string
+     * @param str2: the second string
+     * @param maxDistance: the bound, at least 0
+     * @return the Levenshtein distance of the given strings if it is at most
+     * `maxDistance`, `maxDistance + 1` otherwise
+     */
+    public static int distance(CharSequence str1, CharSequence str2, int maxDistance) {
+        if (maxDistance < 0){
+            throw new IllegalArgumentException("The bound of the Levenshtein distance cannot be negative.");
+        }
+        int n = str1.length();
+        int m = str2.length();
+        int exceeded = maxDistance + 1;
+        if (Math.abs(n - m) > maxDistance){
+            return exceeded;
+        }
+        Scratch s = scratch.get();
+        s.ensureRows(m + 2);
+        int[] previous = s.previous;
+        int[] current = s.current;
 
-                // If str2 is empty, all characters of str1
-                // are removed, which is the only possible
-                //  method of conversion with minimum
-                //  operations.
-                else if (j == 0) {
-                    dp[i][j] = i;
+        int firstHigh = Math.min(m, maxDistance);
+        for (int j = 0; j <= firstHigh; j++){
+            previous[j] = j;
+        }
+        if (firstHigh < m){
+            previous[firstHigh + 1] = exceeded;
+        }
+        for (int i = 1; i <= n; i++){
+            int low = Math.max(1, i - maxDistance);
+            int high = Math.min(m, i + maxDistance);
+            current[low - 1] = low == 1 ? Math.min(i, exceeded) : exceeded;
+            int min = current[low - 1];
+            char c = str1.charAt(i - 1);
+            for (int j = low; j <= high; j++){
+                int value = previous[j - 1] + (str2.charAt(j - 1) == c ? 0 : 1);
+                int delete = previous[j] + 1;
+                if (delete < value){
+                    value = delete;
                 }
-                else {
-                    // find the minimum among three
-                    // operations below
-
-                    dp[i][j] = minm_edits(dp[i - 1][j - 1]
-                    + NumOfReplacement(str1.charAt(i - 1),str2.charAt(j - 1)), // replace
-                    dp[i - 1][j] + 1, // delete
-                    dp[i][j - 1] + 1); // insert
+                int insert = current[j - 1] + 1;
+                if (insert < value){
+                    value = insert;
+                }
+                if (value > exceeded){
+                    value = exceeded;
                 }
+                current[j] = value;
+                if (value < min){
+                    min = value;
+                }
+            }
+            if (high < m){
+                current[high + 1] = exceeded;
             }
+            if (min > maxDistance){
+                return exceeded;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
         }
-
-        return dp[str1.length()][str2.length()];
+        return Math.min(previous[m], exceeded);
     }
 
-    /**Get number of replacements needed
-     *  to get the first character 
-     * from the second one. 
-     * @param c1: the first character
-     * @param c2: the second character
-     * @return 0 if the same, 1 otherwise
+    /**Computes Levenshtein distance by the bit-parallel algorithm.
+     * The bit i of the vertical vectors says whether the value in the row i+1
+     * of the current column of the dynamic programming table is larger (Pv)
+     * or smaller (Mv) than the value in the row i.
+     * @param pattern: the shorter string, at most 64 characters
+     * @param text: the longer string
+     * @return the Levenshtein distance of the given strings
      */
-    static int NumOfReplacement(char c1, char c2)
-    {
-        return c1 == c2 ? 0 : 1;
+    private static int bitParallelDistance(CharSequence pattern, CharSequence text){
+        int m = pattern.length();
+        if (m == 0){
+            return text.length();
+        }
+        long[] masks = scratch.get().masks;
+        for (int i = 0; i < m; i++){
+            char c = pattern.charAt(i);
+            if (c < directAlphabetSize){
+                masks[c] |= 1L << i;
+            }
+        }
+        long last = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = m;
+        for (int j = 0; j < text.length(); j++){
+            char c = text.charAt(j);
+            long eq = c < directAlphabetSize ? masks[c] : mask(pattern, c);
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0){
+                score++;
+            }
+            else if ((mh & last) != 0){
+                score--;
+            }
+            ph = (ph << 1) | 1L;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        for (int i = 0; i < m; i++){
+            char c = pattern.charAt(i);
+            if (c < directAlphabetSize){
+                masks[c] = 0L;
+            }
+        }
+        return score;
     }
 
-    /**Get the minimal value from a variable amount of numbers.
-     * @param nums: the numbers amongst which we seek the minimum
-     * @return the minimum from given numbers or max_value if no number is given
+    /**Get the mask of the positions of the given character in the pattern.
+     * Used for the characters without the directly indexed mask.
+     * @param pattern: the pattern, at most 64 characters
+     * @param c: the character
+     * @return the mask, bit i is set if the i-th character of the pattern is `c`
      */
-    static int minm_edits(int... nums){
-
-    return Arrays.stream(nums).min().orElse(Integer.MAX_VALUE);
+    private static long mask(CharSequence pattern, char c){
+        long mask = 0L;
+        for (int i = 0; i < pattern.length(); i++){
+            if (pattern.charAt(i) == c){
+                mask |= 1L << i;
+            }
+        }
+        return mask;
     }
 
-}
\ No newline at end of file
+    /**Computes Levenshtein distance by the dynamic programming over two rows.
+     * @param str1: the first string
+     * @param str2: the second string
+     * @return the Levenshtein distance of the given strings
+     */
+    private static int rowsDistance(CharSequence str1, CharSequence str2){
+        int m = str2.length();
+        Scratch s = scratch.get();
+        s.ensureRows(m + 1);
+        int[] previous = s.previous;
+        int[] current = s.current;
+        for (int j = 0; j <= m; j++){
+            previous[j] = j;
+        }
+        for (int i = 1; i <= str1.length(); i++){
+            current[0] = i;
+            char c = str1.charAt(i - 1);
+            for (int j = 1; j <= m; j++){
+                int value = previous[j - 1] + (str2.charAt(j - 1) == c ? 0 : 1);
+                value = Math.min(value, previous[j] + 1);
+                current[j] = Math.min(value, current[j - 1] + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+}
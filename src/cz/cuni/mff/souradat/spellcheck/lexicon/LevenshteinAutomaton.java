@@ -0,0 +1,236 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.*;
+
+/**
+ * Universal (parametric) Levenshtein automaton for a fixed maximal distance,
+ * see Schulz, Mihov: Fast String Correction with Levenshtein-Automata (2002).
+ *
+ * A state of the automaton of a concrete word is a set of positions
+ * (i, e): i characters of the word were matched using e edit operations.
+ * Such a set is stored as a parametric state (the positions relative
+ * to the smallest matched length) together with this smallest length
+ * (the offset). The transition of a parametric state depends only on
+ * the characteristic vector of the read character: which characters of
+ * the word in the window of 2n+1 characters starting at the offset
+ * are equal to the read character. All the transitions of all the
+ * parametric states are precomputed once for the given distance
+ * and shared by all the words, so one step costs only a table lookup.
+ */
+public class LevenshteinAutomaton {
+    /** The largest supported maximal distance.*/
+    public static final int maxSupportedDistance = 3;
+    /** Value representing the failure state (no position left).*/
+    public static final int FAIL = -1;
+
+    private static final LevenshteinAutomaton[] automata = new LevenshteinAutomaton[maxSupportedDistance + 1];
+
+    private final int n;
+    private final int window;
+    /** Positions of the parametric states, relative matched length and errors.*/
+    private final int[][] relative;
+    private final int[][] errors;
+    /** Transitions: for every state, window length and characteristic vector,
+     * the target state (lower 16 bits) and the offset increase (upper bits),
+     * or FAIL.*/
+    private final int[][] transitions;
+
+    private LevenshteinAutomaton(int n){
+        this.n = n;
+        this.window = 2 * n + 1;
+        List<int[]> states = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+        List<int[]> table = new ArrayList<>();
+
+        int[] initial = {0, 0};
+        states.add(initial);
+        ids.put(Arrays.toString(initial), 0);
+        for (int s = 0; s < states.size(); s++){
+            int[] state = states.get(s);
+            int[] row = new int[(1 << (window + 1)) - 1];
+            for (int length = 0; length <= window; length++){
+                for (int vector = 0; vector < (1 << length); vector++){
+                    int[] target = step(state, length, vector);
+                    int index = (1 << length) - 1 + vector;
+                    if (target.length == 0){
+                        row[index] = FAIL;
+                        continue;
+                    }
+                    int shift = normalize(target);
+                    String key = Arrays.toString(target);
+                    Integer id = ids.get(key);
+                    if (id == null){
+                        id = states.size();
+                        states.add(target);
+                        ids.put(key, id);
+                    }
+                    row[index] = (shift << 16) | id;
+                }
+            }
+            table.add(row);
+        }
+
+        relative = new int[states.size()][];
+        errors = new int[states.size()][];
+        for (int s = 0; s < states.size(); s++){
+            int[] state = states.get(s);
+            relative[s] = new int[state.length / 2];
+            errors[s] = new int[state.length / 2];
+            for (int p = 0; p < state.length / 2; p++){
+                relative[s][p] = state[2 * p];
+                errors[s][p] = state[2 * p + 1];
+            }
+        }
+        transitions = table.toArray(new int[0][]);
+    }
+
+    /** Get the automaton for the given maximal distance,
+     * its tables are computed on the first use.
+     * @param maxDistance: the maximal Levenshtein distance, 0 to maxSupportedDistance
+     * @return the automaton
+     */
+    public static synchronized LevenshteinAutomaton forDistance(int maxDistance){
+        if (maxDistance < 0 || maxDistance > maxSupportedDistance){
+            throw new IllegalArgumentException(String.format("Unsupported distance %d, the Levenshtein automaton supports distances up to %d.", maxDistance, maxSupportedDistance));
+        }
+        if (automata[maxDistance] == null){
+            automata[maxDistance] = new LevenshteinAutomaton(maxDistance);
+        }
+        return automata[maxDistance];
+    }
+
+    /** Get the number of the parametric states.
+     * @return the number of states
+     */
+    public int size(){
+        return transitions.length;
+    }
+
+    /** Get the initial parametric state (its offset is 0).
+     * @return the initial state
+     */
+    public int getInitialState(){
+        return 0;
+    }
+
+    /** Make one step of the automaton of the given word.
+     * @param state: the current parametric state
+     * @param offset: the current offset
+     * @param word: the word
+     * @param c: the read character
+     * @return the new state (lower 32 bits) and the new offset (upper 32 bits)
+     * or FAIL if no position is left
+     */
+    public long step(int state, int offset, CharSequence word, char c){
+        int length = Math.min(window, word.length() - offset);
+        int vector = 0;
+        for (int k = 0; k < length; k++){
+            if (word.charAt(offset + k) == c){
+                vector |= 1 << k;
+            }
+        }
+        int target = transitions[state][(1 << length) - 1 + vector];
+        if (target == FAIL){
+            return FAIL;
+        }
+        return ((long) (offset + (target >>> 16)) << 32) | (target & 0xFFFF);
+    }
+
+    /** Get the Levenshtein distance of the read characters from the word,
+     * if it is at most the maximal distance of the automaton.
+     * @param state: the current parametric state
+     * @param offset: the current offset
+     * @param wordLength: length of the word
+     * @return the distance or FAIL if it exceeds the maximal distance
+     */
+    public int getDistance(int state, int offset, int wordLength){
+        int best = FAIL;
+        for (int p = 0; p < relative[state].length; p++){
+            int distance = errors[state][p] + wordLength - offset - relative[state][p];
+            if (distance <= n && (best == FAIL || distance < best)){
+                best = distance;
+            }
+        }
+        return best;
+    }
+
+    /** Compute the positions reachable from the given positions
+     * by reading a character with the given characteristic vector.
+     * @param state: the positions (relative length, errors) one after another
+     * @param length: the number of characters of the word in the window
+     * @param vector: the characteristic vector, k-th bit is set if the
+     * k-th character of the window is equal to the read character
+     * @return the reachable positions without the subsumed ones,
+     * relative to the same offset
+     */
+    private int[] step(int[] state, int length, int vector){
+        List<int[]> positions = new ArrayList<>();
+        for (int p = 0; p < state.length; p += 2){
+            int i = state[p];
+            int e = state[p + 1];
+            if (i < length && (vector & (1 << i)) != 0){
+                positions.add(new int[]{i + 1, e});
+            }
+            if (e < n){
+                // insertion of the read character
+                positions.add(new int[]{i, e + 1});
+                // substitution of the word character
+                if (i < length){
+                    positions.add(new int[]{i + 1, e + 1});
+                }
+                // deletion of k word characters followed by a match
+                for (int k = 1; k <= n - e; k++){
+                    if (i + k < length && (vector & (1 << (i + k))) != 0){
+                        positions.add(new int[]{i + k + 1, e + k});
+                    }
+                }
+            }
+        }
+        // remove the subsumed and duplicate positions
+        List<int[]> kept = new ArrayList<>();
+        for (int[] position: positions){
+            boolean subsumed = false;
+            for (int[] other: positions){
+                if (other != position && subsumes(other, position)){
+                    subsumed = true;
+                    break;
+                }
+            }
+            if (!subsumed && kept.stream().noneMatch(k -> Arrays.equals(k, position))){
+                kept.add(position);
+            }
+        }
+        kept.sort(Comparator.<int[]>comparingInt(p -> p[0]).thenComparingInt(p -> p[1]));
+        int[] result = new int[2 * kept.size()];
+        for (int p = 0; p < kept.size(); p++){
+            result[2 * p] = kept.get(p)[0];
+            result[2 * p + 1] = kept.get(p)[1];
+        }
+        return result;
+    }
+
+    /** Checks, whether the first position subsumes the second one,
+     * i.e. every word accepted from the second one is accepted from the first one.
+     * @param a: the first position
+     * @param b: the second position
+     * @return true/false
+     */
+    private static boolean subsumes(int[] a, int[] b){
+        return a[1] < b[1] && Math.abs(b[0] - a[0]) <= b[1] - a[1];
+    }
+
+    /** Shift the positions so that the smallest relative length is 0.
+     * @param positions: the positions, sorted by the relative length
+     * @return the shift
+     */
+    private int normalize(int[] positions){
+        int shift = positions[0];
+        for (int p = 0; p < positions.length; p += 2){
+            positions[p] -= shift;
+            if (positions[p] >= window){
+                throw new IllegalStateException("Position outside of the window of the Levenshtein automaton.");
+            }
+        }
+        return shift;
+    }
+}
@@ -0,0 +1,75 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.function.ObjIntConsumer;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * ISuggester finding the known forms close to a given word
+ * by intersecting the automaton of the lexicon with the Levenshtein
+ * automaton of the word.
+ * The work per visited state of the lexicon is constant (a lookup in the
+ * precomputed parametric tables), independent of the length of the word,
+ * which gives predictable times even for long words.
+ * Distances larger than LevenshteinAutomaton.maxSupportedDistance
+ * are searched by the LevenshteinSearch.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.LevenshteinAutomaton
+ */
+public class LevenshteinAutomatonSearch extends AutomatonSuggester {
+    private static final LevenshteinSearch fallback = new LevenshteinSearch();
+
+    @Override
+    public void search(IAutomaton automaton, CharSequence word, int maxDistance, ObjIntConsumer<String> consumer){
+        if (maxDistance > LevenshteinAutomaton.maxSupportedDistance){
+            fallback.search(automaton, word, maxDistance, consumer);
+            return;
+        }
+        LevenshteinAutomaton levenshtein = LevenshteinAutomaton.forDistance(maxDistance);
+        int root = automaton.getRoot();
+        int initial = levenshtein.getInitialState();
+        if (automaton.isFinal(root)){
+            int distance = levenshtein.getDistance(initial, 0, word.length());
+            if (distance != LevenshteinAutomaton.FAIL){
+                consumer.accept("", distance);
+            }
+        }
+        char[] prefix = new char[word.length() + maxDistance];
+        visit(automaton, levenshtein, word, root, initial, 0, prefix, 0, consumer);
+    }
+
+    /** Visit all the children of the given state of the lexicon automaton.
+     * @param automaton: the lexicon automaton
+     * @param levenshtein: the Levenshtein automaton
+     * @param word: the word to be alternated
+     * @param state: the state of the lexicon automaton
+     * @param levenshteinState: the parametric state of the Levenshtein automaton
+     * @param offset: the offset of the parametric state
+     * @param prefix: the characters read so far
+     * @param depth: the number of the characters read so far
+     * @param consumer: consumer of the found words and their distances
+     */
+    private void visit(IAutomaton automaton, LevenshteinAutomaton levenshtein, CharSequence word,
+                       int state, int levenshteinState, int offset, char[] prefix, int depth, ObjIntConsumer<String> consumer){
+        if (depth == prefix.length){
+            return;
+        }
+        for (int edge = automaton.getFirstEdge(state); edge != IAutomaton.NONE; edge = automaton.getNextEdge(edge)){
+            char c = automaton.getLabel(edge);
+            long next = levenshtein.step(levenshteinState, offset, word, c);
+            if (next == LevenshteinAutomaton.FAIL){
+                continue;
+            }
+            int nextState = (int) next;
+            int nextOffset = (int) (next >>> 32);
+            prefix[depth] = c;
+            int target = automaton.getTarget(edge);
+            if (automaton.isFinal(target)){
+                int distance = levenshtein.getDistance(nextState, nextOffset, word.length());
+                if (distance != LevenshteinAutomaton.FAIL){
+                    consumer.accept(new String(prefix, 0, depth + 1), distance);
+                }
+            }
+            visit(automaton, levenshtein, word, target, nextState, nextOffset, prefix, depth + 1, consumer);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.function.ObjIntConsumer;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * ISuggester finding the known forms close to a given word
+ * by walking the automaton of the lexicon.
+ * The automaton is walked depth-first and for every visited prefix
+ * one row of the Levenshtein dynamic programming table is computed
+ * (the distances of the prefix from all the prefixes of the word).
+ * The subtrees whose row minimum exceeds the maximal distance are skipped,
+ * so only the real forms of the lexicon are ever visited.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.Levenshtein
+ */
+public class LevenshteinSearch extends AutomatonSuggester {
+
+    @Override
+    public void search(IAutomaton automaton, CharSequence word, int maxDistance, ObjIntConsumer<String> consumer){
+        int n = word.length();
+        int maxDepth = n + maxDistance;
+        int[][] rows = new int[maxDepth + 1][n + 1];
+        for (int j = 0; j <= n; j++){
+            rows[0][j] = j;
+        }
+        char[] chars = new char[n];
+        for (int j = 0; j < n; j++){
+            chars[j] = word.charAt(j);
+        }
+        int root = automaton.getRoot();
+        if (n <= maxDistance && automaton.isFinal(root)){
+            consumer.accept("", n);
+        }
+        new Walk(automaton, chars, maxDistance, rows, consumer).visit(root, 0);
+    }
+
+    /**
+     * One depth-first walk of an automaton.
+     */
+    private static class Walk {
+        private final IAutomaton automaton;
+        private final char[] word;
+        private final int maxDistance;
+        /** The i-th row holds the distances of the current prefix
+         * of length i from all the prefixes of the word.*/
+        private final int[][] rows;
+        private final char[] prefix;
+        private final ObjIntConsumer<String> consumer;
+
+        Walk(IAutomaton automaton, char[] word, int maxDistance, int[][] rows, ObjIntConsumer<String> consumer){
+            this.automaton = automaton;
+            this.word = word;
+            this.maxDistance = maxDistance;
+            this.rows = rows;
+            this.prefix = new char[rows.length];
+            this.consumer = consumer;
+        }
+
+        /** Visit all the children of the given state.
+         * @param state: the state reached by the current prefix
+         * @param depth: the length of the current prefix
+         */
+        void visit(int state, int depth){
+            if (depth + 1 >= rows.length){
+                return;
+            }
+            int n = word.length;
+            int[] previous = rows[depth];
+            int[] current = rows[depth + 1];
+            for (int edge = automaton.getFirstEdge(state); edge != IAutomaton.NONE; edge = automaton.getNextEdge(edge)){
+                char c = automaton.getLabel(edge);
+                current[0] = depth + 1;
+                int min = current[0];
+                for (int j = 1; j <= n; j++){
+                    int replace = previous[j - 1] + (word[j - 1] == c ? 0 : 1);
+                    int delete = previous[j] + 1;
+                    int insert = current[j - 1] + 1;
+                    int value = Math.min(replace, Math.min(delete, insert));
+                    current[j] = value;
+                    if (value < min){
+                        min = value;
+                    }
+                }
+                if (min > maxDistance){
+                    continue;
+                }
+                prefix[depth] = c;
+                int target = automaton.getTarget(edge);
+                if (current[n] <= maxDistance && automaton.isFinal(target)){
+                    consumer.accept(new String(prefix, 0, depth + 1), current[n]);
+                }
+                visit(target, depth + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file memory-mapped in chunks of 2^30 bytes, so that it can be larger
+ * than the 2 GB of one mapping, read and written by the absolute positions
+ * of the values. The values are aligned to their sizes, so no value crosses
+ * the border of two chunks. As with the MappedAutomaton, several processes
+ * mapping the same file share its pages in the page cache.
+ * @see cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton
+ */
+final class MappedChunks {
+    private static final int chunkBits = 30;
+    private static final long chunkMask = (1L << chunkBits) - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    /**
+     * Map the first `size` bytes of the file.
+     * @param channel: the open file, it can be closed after the mapping
+     * @param mode: READ_ONLY, or READ_WRITE to write the values
+     * @param size: the mapped size, the file is extended to it when written
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedChunks(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException{
+        this.size = size;
+        chunks = new MappedByteBuffer[(int) ((size + chunkMask) >>> chunkBits)];
+        for (int i = 0; i < chunks.length; i++){
+            long start = (long) i << chunkBits;
+            chunks[i] = channel.map(mode, start, Math.min(size - start, 1L << chunkBits));
+        }
+    }
+
+    /**
+     * Get the mapped size.
+     * @return the size in bytes
+     */
+    long size(){
+        return size;
+    }
+
+    long getLong(long position){
+        return chunks[(int) (position >>> chunkBits)].getLong((int) (position & chunkMask));
+    }
+
+    int getInt(long position){
+        return chunks[(int) (position >>> chunkBits)].getInt((int) (position & chunkMask));
+    }
+
+    char getChar(long position){
+        return chunks[(int) (position >>> chunkBits)].getChar((int) (position & chunkMask));
+    }
+
+    void putLong(long position, long value){
+        chunks[(int) (position >>> chunkBits)].putLong((int) (position & chunkMask), value);
+    }
+
+    void putInt(long position, int value){
+        chunks[(int) (position >>> chunkBits)].putInt((int) (position & chunkMask), value);
+    }
+
+    void putChar(long position, char value){
+        chunks[(int) (position >>> chunkBits)].putChar((int) (position & chunkMask), value);
+    }
+
+    /**
+     * Force the written values to the disk.
+     */
+    void force(){
+        for (MappedByteBuffer chunk: chunks){
+            chunk.force();
+        }
+    }
+}
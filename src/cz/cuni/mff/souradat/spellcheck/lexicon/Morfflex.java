@@ -0,0 +1,222 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.trie.Trie;
+
+/**
+ * Reading of the word forms from the MorfFlex file.
+ * MorfFlex is a tab separated file, the word forms are in its 3rd column.
+ *
+ * The file is memory-mapped and split into blocks ending with a line end.
+ * The blocks are processed in waves of a few blocks per thread:
+ *    - the forms of the blocks are extracted in parallel, directly from
+ *      the bytes, and the repeated forms of a block are dropped
+ *      (MorfFlex lists every form once for each of its tags),
+ *    - the forms are partitioned by their first character and the partial
+ *      tries of the partitions are extended in parallel.
+ * At the end the partial tries are merged into one trie.
+ */
+class Morfflex {
+    private static final int blockSize = 1 << 24;
+    /** Number of blocks per thread processed in one wave.*/
+    private static final int blocksPerThread = 2;
+    /** Number of partitions (partial tries) per thread, for balancing.*/
+    private static final int partitionsPerThread = 4;
+    private static final int maxLineLength = 1 << 16;
+
+    /**
+     * Parse the morfflex file and build a Trie
+     * from the word forms contained in it.
+     * Prints the time spent in the stages of the building.
+     * @param morfflexFilename: path to the morfflex file
+     * @return the built Trie containing
+     * all the word forms present in the morfflex file
+     * @see cz.cuni.mff.souradat.spellcheck.trie.Trie
+     */
+    static Trie loadTrie(String morfflexFilename){
+        Path morfflexPath = Path.of(morfflexFilename);
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int partitions = parallelism * partitionsPerThread;
+        List<Trie> tries = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++){
+            tries.add(new Trie());
+        }
+        long extracting = 0;
+        long building = 0;
+
+        try(FileChannel channel = FileChannel.open(morfflexPath, StandardOpenOption.READ)){
+            long start = System.nanoTime();
+            List<MappedByteBuffer> blocks = mapBlocks(channel);
+            extracting += System.nanoTime() - start;
+
+            int wave = parallelism * blocksPerThread;
+            for (int first = 0; first < blocks.size(); first += wave){
+                List<MappedByteBuffer> waveBlocks = blocks.subList(first, Math.min(blocks.size(), first + wave));
+                start = System.nanoTime();
+                List<List<List<String>>> extracted = waveBlocks.parallelStream()
+                    .map(block -> extractForms(block, partitions))
+                    .collect(Collectors.toList());
+                long extractedAt = System.nanoTime();
+                IntStream.range(0, partitions).parallel().forEach(partition -> {
+                    Trie trie = tries.get(partition);
+                    for (List<List<String>> blockForms: extracted){
+                        for (String form: blockForms.get(partition)){
+                            trie.add(form);
+                        }
+                    }
+                });
+                extracting += extractedAt - start;
+                building += System.nanoTime() - extractedAt;
+            }
+        }
+        catch(IOException e){
+            throw new Error("Morfflex file not found. Please, check that the morfflex file was successfully download by using the dependencies in for the target `run`, and then start the shell again.");
+        }
+
+        long start = System.nanoTime();
+        Trie trie = Trie.merge(tries);
+        long merging = System.nanoTime() - start;
+        Metrics.recordPhase("morfflex parse", extracting);
+        Metrics.recordPhase("trie build", building);
+        Metrics.recordPhase("trie merge", merging);
+        System.out.printf("Lexicon built: extracting the forms %.1f s, building %d partial tries %.1f s, merging %.1f s.%n",
+            extracting / 1e9, partitions, building / 1e9, merging / 1e9);
+        return trie;
+    }
+
+    /**
+     * Map the file in blocks of approximately `blockSize` bytes,
+     * every block except the last one ends just after a '\n'.
+     * @param channel: the channel of the file
+     * @return the mapped blocks
+     * @throws IOException if the file cannot be read or a line is too long
+     */
+    private static List<MappedByteBuffer> mapBlocks(FileChannel channel) throws IOException{
+        long size = channel.size();
+        List<MappedByteBuffer> blocks = new ArrayList<>();
+        long start = 0;
+        while (start < size){
+            long length = Math.min(size - start, (long) blockSize + maxLineLength);
+            MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            int end = (int) length;
+            if (start + length < size){
+                end = blockSize;
+                while (end < length && block.get(end - 1) != '\n'){
+                    end++;
+                }
+                if (block.get(end - 1) != '\n'){
+                    throw new IOException("Too long line in the morfflex file.");
+                }
+                block.limit(end);
+            }
+            blocks.add(block);
+            start += end;
+        }
+        return blocks;
+    }
+
+    /**
+     * Extract the forms (the 3rd columns) of the lines of a block.
+     * The lines with less than 3 columns or with an empty form are skipped.
+     * Every form is extracted only once, even if it is repeated in the block.
+     * @param block: the block of whole lines
+     * @param partitions: the number of partitions
+     * @return for every partition the list of the forms belonging to it
+     * @see #partition
+     */
+    private static List<List<String>> extractForms(MappedByteBuffer block, int partitions){
+        List<List<String>> forms = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++){
+            forms.add(new ArrayList<>());
+        }
+        Set<String> seen = new HashSet<>();
+        byte[] bytes = new byte[64];
+        byte[] previous = new byte[64];
+        int previousLength = -1;
+
+        // bulk copy, reading the bytes one by one from the mapped buffer is slower
+        byte[] text = new byte[block.limit()];
+        block.get(0, text);
+        int limit = text.length;
+        int position = 0;
+        while (position < limit){
+            // skip the first two columns
+            int tabs = 0;
+            while (position < limit && tabs < 2){
+                byte b = text[position++];
+                if (b == '\t'){
+                    tabs++;
+                }
+                else if (b == '\n'){
+                    break;
+                }
+            }
+            if (tabs < 2){
+                continue;
+            }
+            int length = 0;
+            while (position < limit){
+                byte b = text[position];
+                if (b == '\t' || b == '\n'){
+                    break;
+                }
+                if (length == bytes.length){
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                }
+                bytes[length++] = b;
+                position++;
+            }
+            if (length > 0 && bytes[length - 1] == '\r' && (position == limit || text[position] == '\n')){
+                length--;
+            }
+            // skip the rest of the line
+            while (position < limit && text[position++] != '\n'){
+            }
+
+            if (length == 0){
+                continue;
+            }
+            // the lines of a lemma usually repeat the form, compare with the previous one first
+            if (length == previousLength && Arrays.equals(bytes, 0, length, previous, 0, length)){
+                continue;
+            }
+            if (previous.length < bytes.length){
+                previous = new byte[bytes.length];
+            }
+            System.arraycopy(bytes, 0, previous, 0, length);
+            previousLength = length;
+
+            String form = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (seen.add(form)){
+                forms.get(partition(form, partitions)).add(form);
+            }
+        }
+        return forms;
+    }
+
+    /**
+     * Get the partition of a form, the forms with the same first character
+     * are always in the same partition.
+     * @param form: the form
+     * @param partitions: the number of partitions
+     * @return the index of the partition
+     */
+    private static int partition(String form, int partitions){
+        return form.isEmpty() ? 0 : form.charAt(0) % partitions;
+    }
+}
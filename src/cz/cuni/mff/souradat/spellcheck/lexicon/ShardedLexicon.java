@@ -0,0 +1,395 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Counter;
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+import cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton;
+
+/**
+ * Read-only ILexicon whose forms are split by their first character
+ * into shards, every shard is a separate snapshot of a Trie
+ * (in the directory `data/shards`), which is memory-mapped only when
+ * a form starting with its character is looked up for the first time.
+ * So a text using only some of the first characters maps only a part
+ * of the lexicon.
+ *
+ * The size of the shards held by the lexicon can be limited by the property
+ * `budgetProperty` (in megabytes, unlimited by default): when a newly mapped
+ * shard exceeds the budget, the least recently used shards are released
+ * and mapped again on their next use. The budget does not bound the mapped
+ * size of the process: a mapping cannot be safely unmapped while a walk may
+ * still read it, so the mapping of a released shard is unmapped only when
+ * it is garbage collected. Until then it is reused, so a shard is never
+ * mapped twice at once (many pending mappings would exhaust the address
+ * space of the process). A released shard is mapped from the same file,
+ * so the states of the shard stay valid even for the walks running during
+ * its release.
+ *
+ * The shards are built from the trie snapshot (`data/trielexicon.bin`)
+ * if it exists, otherwise from the morfflex file. The manifest stores the
+ * stamp of the snapshot (0 without it) and the shards are built again when
+ * the snapshot changes, e.g. after the added forms are compacted into it.
+ * The suggestion engines
+ * walk all the shards, so finding the suggestions maps the whole lexicon.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon
+ * @see cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton
+ */
+public class ShardedLexicon implements ILexicon {
+    /** System property with the maximal size of the shards held by the lexicon
+     * in megabytes (default 0, unlimited).*/
+    public static final String budgetProperty = "spellcheck.shards.budget";
+
+    private static final String directoryName = "data/shards";
+    private static final String manifestFilename = "shards.bin";
+    private static final String trieSnapshotFilename = "data/trielexicon.bin";
+    private static final String morfflexFilename = "data/czech-morfflex-2.0.tsv";
+    /** Magic number at the beginning of the manifest, "SPSH".*/
+    private static final int magic = 0x53505348;
+    /** Version of the shard files, increase on every incompatible change.*/
+    private static final int version = 2;
+
+    private static final Counter shardLoads = Metrics.counter("shard loads");
+    private static final Counter shardEvictions = Metrics.counter("shard evictions");
+
+    /** The first characters of the shards, sorted.*/
+    private final char[] firsts;
+    private final Shard[] shards;
+    private final long budget = Integer.getInteger(budgetProperty, 0) * (1L << 20);
+    private final long fingerprint;
+    /** The total size of the mapped shards, guarded by `this`.*/
+    private long mapped;
+
+    public ShardedLexicon(){
+        Path directory = Path.of(directoryName);
+        Path manifest = directory.resolve(manifestFilename);
+        long sourceStamp = sourceStamp();
+        char[] found = readManifest(manifest, sourceStamp);
+        if (found == null){
+            found = buildShards(directory, manifest, sourceStamp);
+        }
+        firsts = found;
+        shards = new Shard[firsts.length];
+        for (int i = 0; i < firsts.length; i++){
+            shards[i] = new Shard(directory.resolve(shardFilename(firsts[i])));
+        }
+        try{
+            fingerprint = Files.size(manifest) * 31 + Files.getLastModifiedTime(manifest).toMillis();
+        }
+        catch(IOException e){
+            throw new Error("Unsuccessful reading of the lexicon shards.", e);
+        }
+    }
+
+    /**
+     * Get the stamp of the trie snapshot the shards are built from.
+     * @return the stamp computed from the size and the modification time
+     * of the snapshot, as by the MappedAutomaton, or 0 if it does not exist
+     * @see cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton#getStamp
+     */
+    private static long sourceStamp(){
+        Path snapshot = Path.of(trieSnapshotFilename);
+        try{
+            return Files.size(snapshot) * 31 + Files.getLastModifiedTime(snapshot).toMillis();
+        }
+        catch(IOException e){
+            return 0;
+        }
+    }
+
+    /**
+     * Read the first characters of the shards from the manifest.
+     * @param manifest: the manifest file
+     * @param sourceStamp: the stamp of the current trie snapshot
+     * @return the sorted first characters, or null if the manifest
+     * does not exist, was written by an incompatible version
+     * or for another snapshot
+     */
+    private static char[] readManifest(Path manifest, long sourceStamp){
+        if (!Files.isRegularFile(manifest)){
+            return null;
+        }
+        long start = System.nanoTime();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))){
+            if (in.readInt() != magic || in.readInt() != version || in.readLong() != sourceStamp){
+                return null;
+            }
+            char[] firsts = new char[in.readInt()];
+            for (int i = 0; i < firsts.length; i++){
+                firsts[i] = in.readChar();
+            }
+            Metrics.recordPhase("shards open", System.nanoTime() - start);
+            return firsts;
+        }
+        catch(IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * Write a shard for every first character of the forms of the trie
+     * snapshot (or of the morfflex file) and then the manifest listing them.
+     * @param directory: the directory of the shards
+     * @param manifest: the manifest file
+     * @param sourceStamp: the stamp of the trie snapshot, stored in the manifest
+     * @return the sorted first characters of the shards
+     */
+    private static char[] buildShards(Path directory, Path manifest, long sourceStamp){
+        IAutomaton source = loadSource();
+        long start = System.nanoTime();
+        List<Character> firsts = new ArrayList<>();
+        try{
+            Files.createDirectories(directory);
+            for (int edge = source.getFirstEdge(source.getRoot()); edge != IAutomaton.NONE; edge = source.getNextEdge(edge)){
+                char first = source.getLabel(edge);
+                MappedAutomaton.writeBranch(source, first, directory.resolve(shardFilename(first)));
+                firsts.add(first);
+            }
+            // written as the last one, so the shards are complete if the manifest exists
+            Path temporary = manifest.resolveSibling(manifestFilename + ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+                out.writeInt(magic);
+                out.writeInt(version);
+                out.writeLong(sourceStamp);
+                out.writeInt(firsts.size());
+                for (char first: firsts){
+                    out.writeChar(first);
+                }
+            }
+            Files.move(temporary, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e){
+            throw new Error("Unsuccessful storing of the lexicon shards.", e);
+        }
+        long stored = System.nanoTime() - start;
+        Metrics.recordPhase("shards write", stored);
+        System.out.printf("Lexicon shards (%d) stored in %.1f s.%n", firsts.size(), stored / 1e9);
+        char[] sorted = new char[firsts.size()];
+        for (int i = 0; i < sorted.length; i++){
+            sorted[i] = firsts.get(i);
+        }
+        // the edges of the root are sorted
+        return sorted;
+    }
+
+    /**
+     * Get the trie the shards are built from: the trie snapshot if it
+     * can be opened, otherwise the trie built from the morfflex file.
+     * @return the trie of all the forms
+     */
+    private static IAutomaton loadSource(){
+        Path snapshot = Path.of(trieSnapshotFilename);
+        if (Files.isRegularFile(snapshot)){
+            try{
+                return MappedAutomaton.open(snapshot);
+            }
+            catch(IOException e){
+                // an older, incompatible snapshot, use the morfflex file
+            }
+        }
+        return Morfflex.loadTrie(morfflexFilename);
+    }
+
+    /**
+     * Get the name of the file of the shard.
+     * @param first: the first character of the forms of the shard
+     * @return the file name
+     */
+    private static String shardFilename(char first){
+        return String.format("%04x.bin", (int) first);
+    }
+
+    /**
+     * Get the shard of the forms starting with the given character.
+     * @param first: the first character
+     * @return the shard, or null if no form starts with the character
+     */
+    private Shard getShard(char first){
+        int i = Arrays.binarySearch(firsts, first);
+        return i < 0 ? null : shards[i];
+    }
+
+    @Override
+    /**
+     * Check, whether the given form or one of its allowed variant
+     * is a known word form. Only the shards of the first characters
+     * of the variants are mapped.
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#containsAnyVariant
+     */
+    public boolean contains(String form){
+        return containsAnyVariant(form);
+    }
+
+    @Override
+    public boolean contains(char[] chars, int offset, int length){
+        return containsAnyVariant(CharBuffer.wrap(chars, offset, length));
+    }
+
+    /**
+     * Check the variants of the form in the shards of its first character
+     * and of its lowercased first character, which are the first characters
+     * of all the variants.
+     * @param form: the form to be checked
+     * @return true if any of the variants is a known form
+     */
+    private boolean containsAnyVariant(CharSequence form){
+        if (form.length() == 0){
+            return false;
+        }
+        if (VariantLookup.needsStringLowerCase(form)){
+            return ILexicon.containsAnyVariant(form.toString(), this::containsExactly);
+        }
+        char first = form.charAt(0);
+        Shard shard = getShard(first);
+        if (shard != null && VariantLookup.containsAnyVariant(shard, form)){
+            return true;
+        }
+        char lowered = Character.toLowerCase(first);
+        Shard loweredShard = lowered == first ? null : getShard(lowered);
+        return loweredShard != null && VariantLookup.containsAnyVariant(loweredShard, form);
+    }
+
+    /**
+     * Check, whether exactly the given form is known.
+     * @param form: the form
+     * @return true if the form is in the shard of its first character
+     */
+    private boolean containsExactly(String form){
+        Shard shard = form.isEmpty() ? null : getShard(form.charAt(0));
+        return shard != null && shard.contains(form);
+    }
+
+    @Override
+    public List<IAutomaton> getAutomata(){
+        return List.of(shards);
+    }
+
+    @Override
+    public long getFingerprint(){
+        return fingerprint;
+    }
+
+    @Override
+    /**
+     * The lexicon is read-only.
+     * @throws UnsupportedOperationException always
+     */
+    public boolean addForm(String form){
+        throw new UnsupportedOperationException("The sharded lexicon is read-only, no forms can be added to it.");
+    }
+
+    /**
+     * Map the snapshot of the shard, if it is not mapped yet, and release
+     * the least recently used shards while the budget is exceeded.
+     * @param shard: the shard to be mapped
+     * @return the mapped snapshot of the shard
+     */
+    private synchronized MappedAutomaton map(Shard shard){
+        MappedAutomaton automaton = shard.automaton;
+        if (automaton != null){
+            return automaton;
+        }
+        automaton = shard.released.get();
+        if (automaton == null){
+            try{
+                automaton = MappedAutomaton.open(shard.path);
+            }
+            catch(IOException e){
+                throw new Error("Unsuccessful reading of the lexicon shard " + shard.path + ".", e);
+            }
+            shardLoads.increment();
+        }
+        mapped += automaton.getByteSize();
+        while (budget > 0 && mapped > budget){
+            Shard oldest = null;
+            for (Shard other: shards){
+                if (other != shard && other.automaton != null && (oldest == null || other.lastUsed < oldest.lastUsed)){
+                    oldest = other;
+                }
+            }
+            if (oldest == null){
+                // the shard alone is larger than the budget
+                break;
+            }
+            mapped -= oldest.automaton.getByteSize();
+            oldest.released = new WeakReference<>(oldest.automaton);
+            oldest.automaton = null;
+            shardEvictions.increment();
+        }
+        shard.automaton = automaton;
+        return automaton;
+    }
+
+    /**
+     * The shard of the forms with the same first character, an automaton
+     * whose root has only the edge with the character.
+     * The snapshot is mapped on the first use, the time of the last use
+     * is updated whenever a walk starts from the root.
+     */
+    private final class Shard implements IAutomaton {
+        private final Path path;
+        /** The mapped snapshot, or null if it is not mapped, written under the lock of the lexicon.*/
+        private volatile MappedAutomaton automaton;
+        private volatile long lastUsed;
+        /** The mapped snapshot after its release, guarded by the lock of the lexicon.*/
+        private WeakReference<MappedAutomaton> released = new WeakReference<>(null);
+
+        Shard(Path path){
+            this.path = path;
+        }
+
+        /**
+         * Get the mapped snapshot, map it if needed.
+         * @return the mapped snapshot
+         */
+        private MappedAutomaton automaton(){
+            MappedAutomaton current = automaton;
+            return current != null ? current : map(this);
+        }
+
+        @Override
+        public int getRoot(){
+            lastUsed = System.nanoTime();
+            return automaton().getRoot();
+        }
+
+        @Override
+        public boolean isFinal(int state){
+            return automaton().isFinal(state);
+        }
+
+        @Override
+        public int step(int state, char c){
+            return automaton().step(state, c);
+        }
+
+        @Override
+        public int getFirstEdge(int state){
+            return automaton().getFirstEdge(state);
+        }
+
+        @Override
+        public int getNextEdge(int edge){
+            return automaton().getNextEdge(edge);
+        }
+
+        @Override
+        public char getLabel(int edge){
+            return automaton().getLabel(edge);
+        }
+
+        @Override
+        public int getTarget(int edge){
+            return automaton().getTarget(edge);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+/**
+ * Known form suggested as a correction of a word, together with its
+ * Levenshtein distance from the word, as found by the suggestion engine
+ * (so it never has to be computed again).
+ * @param form: the suggested known form
+ * @param distance: the Levenshtein distance of the form from the word
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ISuggester
+ */
+public record Suggestion(String form, int distance) {
+}
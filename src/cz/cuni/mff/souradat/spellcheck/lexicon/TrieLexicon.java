@@ -1,128 +1,534 @@
 package cz.cuni.mff.souradat.spellcheck.lexicon;
 
 import java.io.*;
-import java.nio.file.*;
-import java.util.stream.Stream;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
+import cz.cuni.mff.souradat.spellcheck.metrics.Histogram;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+import cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton;
 import cz.cuni.mff.souradat.spellcheck.trie.Trie;
 
 /**
  * ILexicon that internally uses Trie to store the known forms.
+ * The forms from the morfflex file are stored in a memory-mapped
+ * snapshot of the Trie, the forms added later are kept in a few separate
+ * (small) Tries in the memory.
+ *
+ * The lexicon can be used from many threads at once. The snapshot is
+ * read-only and the Tries of the added forms are never changed after they
+ * are published: a new form gets its own Trie, the levels of the added forms
+ * are merged into a new Trie while the last level is not smaller than
+ * the previous one (as the carries of a binary counter), and the new list
+ * of the levels replaces the old one by one volatile write. So there are
+ * at most log n levels and every added form is copied at most log n times.
+ * The readers never block and never see a partially added form,
+ * the additions are serialized by a lock.
+ *
+ * The added forms are kept between the runs in an append-only journal
+ * (`addedforms.log` in the directory data), which is replayed on the top
+ * of the snapshot at the start. When the journal has `compactProperty`
+ * forms (default 10000), a background thread writes a new snapshot
+ * of the union of the current snapshot file and the added forms, which then
+ * replaces the old snapshot, and the compacted forms are removed from the
+ * journal. The readers are not blocked by the compaction, the additions
+ * are, as the journal is locked during it (it can be shared by several
+ * processes, see AddedFormsLog).
+ *
+ * Before the walks, the form is looked up in a Bloom filter of the known
+ * forms (`bloomProperty` bits per form, 0 disables it), which rejects most
+ * of the unknown forms at the cost of a few hashes. The filter of the
+ * snapshot is stored next to it (`trielexicon.bloom`) and built again
+ * whenever the snapshot or the number of the bits per form changes,
+ * the added forms are added to it. The filter has room for the added forms
+ * (at least `compactProperty` or 10000 of them); when they fill it, a filter
+ * twice as large for the added forms is built in the memory.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.AddedFormsLog
  * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon
  * @see cz.cuni.mff.souradat.spellcheck.trie.Trie
+ * @see cz.cuni.mff.souradat.spellcheck.trie.MappedAutomaton
  */
 public class TrieLexicon implements ILexicon {
-    private static final String serializedFilename = "data/trielexicon.ser";
+    /** System property with the number of the added forms, which are compacted
+     * into a new snapshot (default 10000, 0 means never).*/
+    public static final String compactProperty = "spellcheck.journal.compact";
+    /** System property with the period of forcing the journal to the disk
+     * in milliseconds (default 100).*/
+    public static final String syncProperty = "spellcheck.journal.sync";
+    /** System property with the number of the bits per form of the Bloom filter
+     * (default 10, 0 disables the filter).*/
+    public static final String bloomProperty = "spellcheck.bloom.bits";
+
+    private static final String snapshotFilename = "data/trielexicon.bin";
+    private static final String journalFilename = "data/addedforms.log";
+    private static final String filterFilename = "data/trielexicon.bloom";
     private static final String morfflexFilename = "data/czech-morfflex-2.0.tsv";
+    private static final Histogram compactions = Metrics.histogram("journal compaction", "ms");
+    /** The minimal number of the forms the Bloom filter has room for above the known ones.*/
+    private static final int filterHeadroom = 10000;
 
-    private Trie lexicon;
+    /** The snapshot and the forms added to it, never changed after it is published.*/
+    private volatile Content content;
+    private final Object addLock = new Object();
+    private final AddedFormsLog journal;
+    private final int compactThreshold = Integer.getInteger(compactProperty, 10000);
+    private final int bitsPerForm = Integer.getInteger(bloomProperty, 10);
+    /** The running compaction or null, guarded by `addLock`.*/
+    private Thread compaction;
+
+    /**
+     * The content of the lexicon.
+     * @param snapshot: the mapped snapshot
+     * @param added: the levels of the forms added to the snapshot, the larger first
+     * @param count: the number of the added forms
+     * @param hash: order-independent hash of the added forms, part of the fingerprint
+     * @param filter: the Bloom filter of the snapshot and the added forms, or null;
+     * the forms added later are added to the same filter (or to a larger one built when it
+     * is full) before the new content is published
+     */
+    private record Content(MappedAutomaton snapshot, List<Level> added, int count, long hash, BloomFilter filter){
+    }
+
+    /**
+     * One level of the added forms, never changed after it is published.
+     * @param forms: the Trie of the forms
+     * @param count: the number of the forms
+     */
+    private record Level(Trie forms, int count){
+    }
 
     public TrieLexicon(){
-        lexicon = loadLexicon();
+        MappedAutomaton snapshot = loadLexicon();
+        Trie added = new Trie();
+        int[] count = {0};
+        long[] hash = {0};
+        try{
+            long start = System.nanoTime();
+            journal = new AddedFormsLog(Path.of(journalFilename), Integer.getInteger(syncProperty, 100), form -> {
+                if (!snapshot.contains(form) && !added.contains(form)){
+                    added.add(form);
+                    count[0]++;
+                    hash[0] += mix(form.hashCode());
+                }
+            });
+            Metrics.recordPhase("journal replay", System.nanoTime() - start);
+        }
+        catch(IOException e){
+            throw new Error("Unsuccessful reading of the journal of the added forms.", e);
+        }
+        BloomFilter filter = loadFilter(snapshot, count[0]);
+        if (filter != null){
+            added.forEachWord(filter::add);
+        }
+        content = new Content(snapshot, toLevels(added, count[0]), count[0], hash[0], filter);
+        synchronized (addLock){
+            compactIfNeeded();
+        }
     }
 
     /**
-     * Load the trie lexicon, either from the serialized file
+     * Load the trie lexicon, either from the snapshot file
      * or directly build the trie from the morfflex file
-     * @return the built Trie
+     * (and store it in the snapshot file).
+     * @return the mapped snapshot of the Trie
      * @see cz.cuni.mff.souradat.spellcheck.trie.Trie
      */
-    private Trie loadLexicon(){
-        File f = new File(serializedFilename);
-        Trie lex;
-        
-        if(!f.exists() || f.isDirectory()) { 
-            lex = loadMorfflex();
-            serializeLexicon(lex);
+    private MappedAutomaton loadLexicon(){
+        Path snapshot = Path.of(snapshotFilename);
+        File f = snapshot.toFile();
+
+        if(f.exists() && !f.isDirectory()) {
+            try{
+                return openSnapshot(snapshot);
+            }
+            catch(IOException e){
+                // the snapshot was created by an older, incompatible version,
+                // build it again
+            }
+        }
+        try{
+            Trie built = loadMorfflex();
+            long start = System.nanoTime();
+            MappedAutomaton.write(built, false, snapshot);
+            long stored = System.nanoTime() - start;
+            Metrics.recordPhase("snapshot write", stored);
+            System.out.printf("Lexicon snapshot stored in %.1f s.%n", stored / 1e9);
+            return openSnapshot(snapshot);
         }
-        else{ lex = deserializeLexicon(); }
-        return lex;
+        catch(IOException e){
+            throw new Error("Unsuccessful storing of the lexicon snapshot.", e);
+        }
+    }
+
+    /**
+     * Open the snapshot file and record the duration of the opening.
+     * @param snapshot: path to the snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the snapshot cannot be read or has a wrong format
+     */
+    private static MappedAutomaton openSnapshot(Path snapshot) throws IOException{
+        long start = System.nanoTime();
+        MappedAutomaton automaton = MappedAutomaton.open(snapshot);
+        Metrics.recordPhase("snapshot open", System.nanoTime() - start);
+        return automaton;
+    }
+
+    /**
+     * Read the Bloom filter of the snapshot, or build it and store it
+     * if it does not exist, belongs to another snapshot, has another number
+     * of the bits per form or has no room for the added forms.
+     * @param snapshot: the snapshot
+     * @param added: the number of the forms to be added to the filter
+     * @return the filter, or null if it is disabled or cannot be built
+     */
+    private BloomFilter loadFilter(MappedAutomaton snapshot, int added){
+        if (bitsPerForm <= 0){
+            return null;
+        }
+        Path path = Path.of(filterFilename);
+        long start = System.nanoTime();
+        try{
+            BloomFilter filter = BloomFilter.read(path, snapshot.getStamp(), bitsPerForm);
+            if (filter != null && filter.getCount() + added <= filter.getCapacity()){
+                Metrics.recordPhase("bloom filter read", System.nanoTime() - start);
+                return filter;
+            }
+        }
+        catch(IOException e){
+            // build it again
+        }
+        try{
+            return buildFilter(snapshot, path, filterExtra(added));
+        }
+        catch(IOException | IllegalArgumentException e){
+            // the lookups work without the filter, only slower
+            return null;
+        }
+        finally{
+            Metrics.recordPhase("bloom filter build", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Build the Bloom filter of the snapshot and store it.
+     * @param snapshot: the snapshot
+     * @param path: the file of the filter
+     * @param extra: the number of the forms expected to be added to the snapshot
+     * @return the filter
+     * @throws IOException if the filter cannot be stored
+     * @throws IllegalArgumentException if the filter would be too large
+     */
+    private BloomFilter buildFilter(MappedAutomaton snapshot, Path path, long extra) throws IOException{
+        BloomFilter filter = BloomFilter.of(snapshot, bitsPerForm, extra);
+        filter.write(path, snapshot.getStamp());
+        return filter;
+    }
+
+    /**
+     * Build a Bloom filter of the snapshot and the added forms in the memory,
+     * with room for as many forms more as are added.
+     * @param snapshot: the snapshot
+     * @param added: the levels of the added forms
+     * @param count: the number of the added forms
+     * @return the filter, or null if it cannot be built
+     */
+    private BloomFilter rebuildFilter(MappedAutomaton snapshot, List<Level> added, int count){
+        long start = System.nanoTime();
+        try{
+            BloomFilter filter = BloomFilter.of(snapshot, bitsPerForm, filterExtra(count));
+            for (Level level: added){
+                level.forms().forEachWord(filter::add);
+            }
+            return filter;
+        }
+        catch(IllegalArgumentException e){
+            // the lookups work without the filter, only slower
+            return null;
+        }
+        finally{
+            Metrics.recordPhase("bloom filter build", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Get the number of the forms a new Bloom filter has room for above
+     * the snapshot: the added forms and the headroom, at least as many
+     * as are added, so that the filters are rebuilt only rarely.
+     * @param added: the number of the added forms
+     * @return the number of the forms
+     */
+    private long filterExtra(int added){
+        return added + Math.max(added, Math.max(compactThreshold, filterHeadroom));
     }
 
     @Override
     /**
      * Check, whether the given form or one of its allowed variant
      * is a known word form.
-     * The allowed variants:
-     *    - the form itself
-     *    - the form without capitalized first character (for the forms at
-     *      the beginning of the sentence)
-     *    - the form completely lowercased if it was completely uppercased
-     *    - the form lowercased but with capital first letter if it was
-     *      completely uppercased
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#containsAnyVariant
      */
     public boolean contains(String form) {
-        return 
-        lexicon.contains(form) ||
-        lexicon.contains(ILexicon.removeCapitalization(form)) ||
-        lexicon.contains(ILexicon.toLowerCaseIfUpperCase(form)) ||
-        lexicon.contains(ILexicon.toCapitalizedLowerCaseIfUpperCase(form));
+        return containsAnyVariant(form);
     }
-    
+
     @Override
-    public boolean addForm(String form) {
-        if (lexicon.contains(form)){
+    public boolean contains(char[] chars, int offset, int length){
+        return containsAnyVariant(CharBuffer.wrap(chars, offset, length));
+    }
+
+    /**
+     * Check all the allowed variants of the form in one walk
+     * of the snapshot and one walk of the added forms.
+     * @param form: the form to be checked
+     * @return true if any variant is known, false otherwise
+     * @see cz.cuni.mff.souradat.spellcheck.lexicon.VariantLookup
+     */
+    private boolean containsAnyVariant(CharSequence form){
+        Content current = content;
+        if (current.filter() != null && !current.filter().mightContainAnyVariant(form)){
             return false;
         }
-        else{
-            lexicon.add(form);
+        if (VariantLookup.containsAnyVariant(current.snapshot(), form)){
             return true;
         }
+        for (Level level: current.added()){
+            if (VariantLookup.containsAnyVariant(level.forms(), form)){
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Parse the morfflex file and build a Trie
-     * from the word forms contained in it.
-     * @return the built Trie containing 
-     * all the word forms present in the morfflex file
-     * @see cz.cuni.mff.souradat.spellcheck.trie.Trie
+     * Check, whether exactly the given form was added.
+     * @param levels: the levels of the added forms
+     * @param form: the form
+     * @return true if any level contains the form
      */
-    private Trie loadMorfflex(){
-        
-	    Path morfflexPath = Path.of(morfflexFilename);
+    private static boolean isAdded(List<Level> levels, String form){
+        for (Level level: levels){
+            if (level.forms().contains(form)){
+                return true;
+            }
+        }
+        return false;
+    }
 
-        try{
-            // the word forms are in the 3rd column in the morfflex file
-            Stream<String> forms = Files.lines(morfflexPath).map(line -> (line.split("\t")[2]));
-            Trie trie = Trie.fromStream(forms);
-            return trie;
+    /**
+     * Create the levels of the added forms with one more form.
+     * The given levels are not changed, only the merged ones are copied.
+     * @param levels: the levels of the added forms
+     * @param form: the added form, not contained in the levels
+     * @return the new levels
+     */
+    private static List<Level> withForm(List<Level> levels, String form){
+        List<Level> next = new ArrayList<>(levels);
+        Trie single = new Trie();
+        single.add(form);
+        Level last = new Level(single, 1);
+        while (!next.isEmpty() && next.get(next.size() - 1).count() <= last.count()){
+            Level previous = next.remove(next.size() - 1);
+            Trie merged = previous.forms().copy();
+            last.forms().forEachWord(merged::add);
+            last = new Level(merged, previous.count() + last.count());
         }
-        catch(IOException e){
-            throw new Error("Morfflex file not found. Please, check that the morfflex file was successfully download by using the dependencies in for the target `run`, and then start the shell again.");
+        next.add(last);
+        return List.copyOf(next);
+    }
+
+    /**
+     * Create the levels of the given added forms.
+     * @param forms: the Trie of the forms, not changed any more
+     * @param count: the number of the forms
+     * @return one level, or no level if there are no forms
+     */
+    private static List<Level> toLevels(Trie forms, int count){
+        return count == 0 ? List.of() : List.of(new Level(forms, count));
+    }
+
+    @Override
+    /**
+     * Add the form, if it is not known yet, and append it to the journal.
+     * Safe to be called concurrently with the other methods.
+     * @throws IllegalArgumentException if the form contains a line end
+     * @throws UncheckedIOException if the form cannot be written to the journal,
+     * then it is not added
+     */
+    public boolean addForm(String form) {
+        if (form.indexOf('\n') >= 0 || form.indexOf('\r') >= 0){
+            throw new IllegalArgumentException("The form cannot contain a line end.");
+        }
+        synchronized (addLock){
+            Content current = content;
+            if (current.snapshot().contains(form) || isAdded(current.added(), form)){
+                return false;
+            }
+            try{
+                journal.append(form);
+            }
+            catch(IOException e){
+                throw new UncheckedIOException("Unsuccessful writing of the form to the journal.", e);
+            }
+            BloomFilter filter = current.filter();
+            if (filter != null && filter.getCount() >= filter.getCapacity()){
+                // a fuller filter would pass more unknown forms, the readers keep the old one
+                filter = rebuildFilter(current.snapshot(), current.added(), current.count() + 1);
+            }
+            if (filter != null){
+                filter.add(form);
+            }
+            List<Level> added = withForm(current.added(), form);
+            content = new Content(current.snapshot(), added, current.count() + 1, current.hash() + mix(form.hashCode()), filter);
+            compactIfNeeded();
+            return true;
+        }
+    }
+
+    @Override
+    public List<IAutomaton> getAutomata(){
+        Content current = content;
+        List<IAutomaton> automata = new ArrayList<>(current.added().size() + 1);
+        automata.add(current.snapshot());
+        for (Level level: current.added()){
+            automata.add(level.forms());
         }
+        return automata;
     }
 
+    @Override
+    public long getFingerprint(){
+        Content current = content;
+        return current.snapshot().getStamp() * 31 + current.hash();
+    }
+
+    @Override
     /**
-     * Serialize to the given Trie lexicon, 
-     * to the file specified by the attribut `serializedFilename`.
-     * @param lexicon: lexicon to be serialized.
+     * Wait for the running compaction, force the journal to the disk and close it.
      */
-    private void serializeLexicon(Trie lexicon){
-        try(var oos = new ObjectOutputStream(new FileOutputStream(serializedFilename))){
-            oos.writeObject(lexicon);
+    public void close(){
+        Thread running;
+        synchronized (addLock){
+            running = compaction;
+        }
+        if (running != null){
+            try{
+                running.join();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        try{
+            journal.close();
         }
         catch(IOException e){
-            throw new Error(e);
+            // the forms already written stay in the page cache
+        }
+    }
+
+    /**
+     * Start the compaction on a background thread, if there are enough
+     * added forms and no compaction is running. Called with `addLock` held.
+     */
+    private void compactIfNeeded(){
+        if (compaction != null || compactThreshold <= 0 || content.count() < compactThreshold){
+            return;
         }
+        compaction = new Thread(this::compact, "journal-compaction");
+        compaction.setDaemon(true);
+        compaction.start();
     }
 
     /**
-     * Deserialize to the given Trie lexicon, 
-     * from the file specified by the attribut `serializedFilename`.
-     * @returns the deserialized lexicon
+     * Write the union of the snapshot file and the added forms to a new snapshot,
+     * switch to it and keep in the journal only the forms not stored in it.
+     * If the compaction fails, the forms stay in the journal; if it fails after
+     * the snapshot is replaced, the forms are only repeated in both.
      */
-    private Trie deserializeLexicon(){
-        try(ObjectInputStream ois = new ObjectInputStream(new FileInputStream(serializedFilename))){
-            Trie lexicon = (Trie)ois.readObject();
-            return lexicon;
+    private void compact(){
+        long start = System.nanoTime();
+        Content compacted = content;
+        Trie compactedForms = new Trie();
+        for (Level level: compacted.added()){
+            level.forms().forEachWord(compactedForms::add);
+        }
+        Path snapshot = Path.of(snapshotFilename);
+        MappedAutomaton[] union = {null};
+        BloomFilter[] filter = {null};
+        try{
+            // no other process appends or compacts until the journal is rewritten
+            journal.compact(() -> {
+                // another process may have compacted its forms into the snapshot meanwhile
+                MappedAutomaton.writeUnion(MappedAutomaton.open(snapshot), compactedForms, snapshot);
+                union[0] = MappedAutomaton.open(snapshot);
+                if (compacted.filter() != null){
+                    try{
+                        filter[0] = buildFilter(union[0], Path.of(filterFilename), filterExtra(0));
+                    }
+                    catch(IOException | IllegalArgumentException e){
+                        // without the filter, it is built again at the next start
+                    }
+                }
+                return union[0]::contains;
+            });
+            synchronized (addLock){
+                // the forms added during the writing of the snapshot
+                Content current = content;
+                Trie remaining = new Trie();
+                int[] count = {0};
+                long[] hash = {0};
+                for (Level level: current.added()){
+                    level.forms().forEachWord(form -> {
+                        if (!union[0].contains(form)){
+                            remaining.add(form);
+                            count[0]++;
+                            hash[0] += mix(form.hashCode());
+                        }
+                    });
+                }
+                List<Level> levels = toLevels(remaining, count[0]);
+                if (filter[0] != null && filter[0].getCount() + count[0] > filter[0].getCapacity()){
+                    filter[0] = rebuildFilter(union[0], levels, count[0]);
+                }
+                else if (filter[0] != null){
+                    remaining.forEachWord(filter[0]::add);
+                }
+                content = new Content(union[0], levels, count[0], hash[0], filter[0]);
+            }
+            compactions.record((System.nanoTime() - start) / 1_000_000);
         }
         catch(IOException e){
-            throw new Error("Unsuccesful deserialization of te lexicon.");
+            // try it again with the next added form
         }
-        catch(ClassNotFoundException e){
-            throw new Error("Not safe class in deserialization.");
+        finally{
+            synchronized (addLock){
+                compaction = null;
+            }
         }
     }
 
+    /**
+     * Spread the bits of a string hash over 64 bits.
+     * @param hash: the hash
+     * @return the mixed hash
+     */
+    private static long mix(int hash){
+        long h = hash * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
+    }
 
+    /**
+     * Parse the morfflex file and build a Trie
+     * from the word forms contained in it.
+     * @return the built Trie containing
+     * all the word forms present in the morfflex file
+     * @see cz.cuni.mff.souradat.spellcheck.trie.Trie
+     */
+    private Trie loadMorfflex(){
+        return Morfflex.loadTrie(morfflexFilename);
+    }
 }
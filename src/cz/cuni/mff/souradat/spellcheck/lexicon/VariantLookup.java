@@ -0,0 +1,144 @@
+package cz.cuni.mff.souradat.spellcheck.lexicon;
+
+import java.util.Locale;
+
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
+
+/**
+ * Checks all the allowed case variants of a form (see
+ * ILexicon.containsAnyVariant) in one walk of an automaton,
+ * without creating the variants.
+ * The variants differ only in the case of the first character
+ * and of the rest of the form, so the walk follows up to four paths
+ * at once:
+ *    - the form itself (original first character, original rest)
+ *    - without capitalization (lowercased first, original rest),
+ *      only if the first character is uppercase
+ *    - lowercased (lowercased first, lowercased rest)
+ *    - capitalized lowercase (original first, lowercased rest)
+ * The last two exist only if the whole form is uppercase, which is
+ * checked during the walk: they are dropped at the first lowercase character.
+ *
+ * The characters are lowercased one by one, which is the same as
+ * String.toLowerCase except for the locales with special rules
+ * (Turkish, Azerbaijani, Lithuanian), the capital I with dot,
+ * the final sigma and the characters outside of the basic multilingual plane.
+ * The forms with them are checked by creating the variants.
+ * @see cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon#containsAnyVariant
+ */
+class VariantLookup {
+
+    private VariantLookup(){
+    }
+
+    /**
+     * Check, whether the given form or one of its allowed variants
+     * is accepted by the given automaton.
+     * @param automaton: the automaton of the known forms
+     * @param form: the form to be checked
+     * @return the same result as ILexicon.containsAnyVariant with
+     * the exact lookup in the automaton
+     */
+    static boolean containsAnyVariant(IAutomaton automaton, CharSequence form){
+        int n = form.length();
+        int root = automaton.getRoot();
+        if (n == 0){
+            return automaton.isFinal(root);
+        }
+        if (needsStringLowerCase(form)){
+            return ILexicon.containsAnyVariant(form.toString(), automaton::contains);
+        }
+        char first = form.charAt(0);
+        char firstLower = Character.toLowerCase(first);
+        boolean upper = !Character.isLowerCase(first);
+
+        int original = automaton.step(root, first);
+        int lowered = firstLower == first ? original : automaton.step(root, firstLower);
+        // the four paths: original first character followed by the original
+        // or lowercased rest, lowercased first character followed by
+        // the original or lowercased rest
+        int originalOriginal = original;
+        int loweredOriginal = Character.isUpperCase(first) ? lowered : IAutomaton.NONE;
+        int loweredLowered = upper ? lowered : IAutomaton.NONE;
+        int originalLowered = upper && n >= 2 ? original : IAutomaton.NONE;
+
+        for (int i = 1; i < n; i++){
+            char c = form.charAt(i);
+            if (Character.isLowerCase(c)){
+                upper = false;
+                loweredLowered = IAutomaton.NONE;
+                originalLowered = IAutomaton.NONE;
+            }
+            char lower = Character.toLowerCase(c);
+            originalOriginal = step(automaton, originalOriginal, c);
+            loweredOriginal = step(automaton, loweredOriginal, c);
+            loweredLowered = step(automaton, loweredLowered, lower);
+            originalLowered = step(automaton, originalLowered, lower);
+            if (originalOriginal == IAutomaton.NONE && loweredOriginal == IAutomaton.NONE
+                && loweredLowered == IAutomaton.NONE && originalLowered == IAutomaton.NONE){
+                return false;
+            }
+        }
+        return isFinal(automaton, originalOriginal) || isFinal(automaton, loweredOriginal)
+            || isFinal(automaton, loweredLowered) || isFinal(automaton, originalLowered);
+    }
+
+    /**
+     * Check, whether lowercasing of the form by String.toLowerCase
+     * can differ from lowercasing its characters one by one.
+     * @param form: the form
+     * @return true if the variants have to be created by String.toLowerCase
+     */
+    static boolean needsStringLowerCase(CharSequence form){
+        if (hasSpecialLowerCase()){
+            return true;
+        }
+        for (int i = 0; i < form.length(); i++){
+            if (needsStringLowerCase(form.charAt(i))){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check, whether the default locale has special rules of lowercasing.
+     * @return true if String.toLowerCase can differ from lowercasing
+     * the characters one by one for any form
+     */
+    static boolean hasSpecialLowerCase(){
+        String language = Locale.getDefault().getLanguage();
+        return language.equals("tr") || language.equals("az") || language.equals("lt");
+    }
+
+    /**
+     * Check, whether lowercasing of a form containing the character
+     * by String.toLowerCase can differ from lowercasing it alone.
+     * @param c: the character
+     * @return true for the capital I with dot, the capital sigma and the surrogates
+     */
+    static boolean needsStringLowerCase(char c){
+        return c >= 'İ' && (c == 'İ' || c == 'Σ' || Character.isSurrogate(c));
+    }
+
+    /**
+     * Make a step from the given state, if there is any.
+     * @param automaton: the automaton
+     * @param state: the state or NONE
+     * @param c: the read character
+     * @return the target state or NONE
+     */
+    private static int step(IAutomaton automaton, int state, char c){
+        return state == IAutomaton.NONE ? IAutomaton.NONE : automaton.step(state, c);
+    }
+
+    /**
+     * Check, whether the given state exists and is final.
+     * @param automaton: the automaton
+     * @param state: the state or NONE
+     * @return true/false
+     */
+    private static boolean isFinal(IAutomaton automaton, int state){
+        return state != IAutomaton.NONE && automaton.isFinal(state);
+    }
+}
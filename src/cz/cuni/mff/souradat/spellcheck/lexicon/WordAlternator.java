@@ -1,17 +1,24 @@
 package cz.cuni.mff.souradat.spellcheck.lexicon;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import java.util.stream.IntStream;
 
 import cz.cuni.mff.souradat.spellcheck.lexicon.Levenshtein;
+import cz.cuni.mff.souradat.spellcheck.trie.IAutomaton;
 
 /**
  * Class for creating all possible alternations of a word.
  * The allowed operations are deletion/insertion of a character
  * and replacement of one character by another one.
+ *
+ * The alternations are either created with a fixed alphabet, or only
+ * those accepted by an automaton (e.g. of the lexicon): then at every
+ * position only the characters that the automaton allows after
+ * the current prefix are tried.
  */
 public class WordAlternator {
 
@@ -70,6 +77,22 @@ public class WordAlternator {
             flatMap(Function.identity());
     }
 
+    /** Generates all words whose distance from the given word
+     * is exactly `distance`, using the default alphabet
+     * @param word: word to be alternated.
+     * @param distance: Levenshtein distance of the alterations
+     * from the initial word
+     * @return finite stream of unique alternations
+     */
+    public static Stream<String> alternatedWithDistance(String word, int distance){
+        Stream<String> words = wordsWithDistN(word, new ArrayList<Character>(defaultAlphabet), distance);
+        if (distance == 1){
+            // the single changes can repeat a word or create the word itself
+            words = words.filter(w -> !w.equals(word)).distinct();
+        }
+        return words;
+    }
+
     /**
      * Generates all words with Levenshtein distance 1 from the given word,
      * using the given alphabet.
@@ -96,7 +119,7 @@ public class WordAlternator {
         for (int i=2; i<=n; i++){
             final int j = i;
             words = words.flatMap( w -> wordsWithDistOne(w, alphabet)).
-                filter(w -> Levenshtein.distance(w, word) == j).
+                filter(w -> Levenshtein.distance(w, word, j) == j).
                 distinct();
         }
         return words;
@@ -247,6 +270,84 @@ public class WordAlternator {
 
     }
 
+    /**
+     * Generates all words of the automaton that can be created from
+     * the given word by at most `edits` insertions, deletions and
+     * replacements of characters. At every position only the characters
+     * that the automaton allows after the current prefix are tried,
+     * so the alphabet is the one of the automaton and no alternation
+     * outside of the automaton is created.
+     * A word created in several ways is passed to the consumer repeatedly,
+     * the word itself too if it is in the automaton.
+     * @param automaton: the automaton of the allowed words
+     * @param word: word to be alternated
+     * @param edits: maximal number of the changes
+     * @param consumer: consumer of the created words
+     */
+    public static void alternatedIn(IAutomaton automaton, CharSequence word, int edits, Consumer<String> consumer){
+        char[] chars = new char[word.length()];
+        for (int i = 0; i < chars.length; i++){
+            chars[i] = word.charAt(i);
+        }
+        new ConstrainedAlternation(automaton, chars, edits, consumer).visit(automaton.getRoot(), 0, 0, edits);
+    }
+
+    /**
+     * One walk of an automaton creating the alternations of a word
+     * accepted by the automaton.
+     */
+    private static class ConstrainedAlternation {
+        private final IAutomaton automaton;
+        private final char[] word;
+        /** The created prefix of an alternation.*/
+        private final char[] prefix;
+        private final Consumer<String> consumer;
+
+        ConstrainedAlternation(IAutomaton automaton, char[] word, int edits, Consumer<String> consumer){
+            this.automaton = automaton;
+            this.word = word;
+            this.prefix = new char[word.length + edits];
+            this.consumer = consumer;
+        }
+
+        /**
+         * Create the alternations continuing from the given state.
+         * @param state: the state reached by the current prefix
+         * @param depth: the length of the current prefix
+         * @param position: the number of the characters of the word used so far
+         * @param edits: the number of the remaining changes
+         */
+        void visit(int state, int depth, int position, int edits){
+            if (position == word.length && automaton.isFinal(state)){
+                consumer.accept(new String(prefix, 0, depth));
+            }
+            if (position < word.length){
+                // keep the character
+                int target = automaton.step(state, word[position]);
+                if (target != IAutomaton.NONE){
+                    prefix[depth] = word[position];
+                    visit(target, depth + 1, position + 1, edits);
+                }
+            }
+            if (edits == 0){
+                return;
+            }
+            if (position < word.length){
+                visit(state, depth, position + 1, edits - 1);
+            }
+            for (int edge = automaton.getFirstEdge(state); edge != IAutomaton.NONE; edge = automaton.getNextEdge(edge)){
+                char c = automaton.getLabel(edge);
+                int target = automaton.getTarget(edge);
+                prefix[depth] = c;
+                // insertion before the character, or replacement of it
+                visit(target, depth + 1, position, edits - 1);
+                if (position < word.length && c != word[position]){
+                    visit(target, depth + 1, position + 1, edits - 1);
+                }
+            }
+        }
+    }
+
     /**
      * Convert an iterable to a stream.
      * @param <T> the type of the elements in the iterable.
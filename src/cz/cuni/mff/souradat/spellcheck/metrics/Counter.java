@@ -0,0 +1,50 @@
+package cz.cuni.mff.souradat.spellcheck.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter of events, cheap to increment from many threads.
+ */
+public class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name){
+        this.name = name;
+    }
+
+    /**
+     * Count one event.
+     */
+    public void increment(){
+        count.increment();
+    }
+
+    /**
+     * Count the given number of events.
+     * @param events: the number of events
+     */
+    public void add(long events){
+        count.add(events);
+    }
+
+    /**
+     * Get the number of the counted events.
+     * @return the count
+     */
+    public long get(){
+        return count.sum();
+    }
+
+    /**
+     * Get the name of the counter.
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+
+    void reset(){
+        count.reset();
+    }
+}
@@ -0,0 +1,176 @@
+package cz.cuni.mff.souradat.spellcheck.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values with log-linear buckets
+ * (in the style of HdrHistogram): the values below 8 have their own
+ * buckets, every higher power of two is split into 8 buckets,
+ * so the relative error of the reported percentiles is at most 12.5 %.
+ * Recording is one increment of an array element, the counts are striped
+ * by the recording thread to avoid the contention.
+ */
+public class Histogram {
+    private static final int subBucketBits = 3;
+    private static final int subBuckets = 1 << subBucketBits;
+    private static final int buckets = (Long.SIZE - subBucketBits + 1) * subBuckets;
+    /** Number of the stripes, the power of two at least the number of the cores (at most 16).*/
+    private static final int stripes = Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(stripes * buckets);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    Histogram(String name, String unit){
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Record a value.
+     * @param value: the value, negative values are recorded as 0
+     */
+    public void record(long value){
+        if (value < 0){
+            value = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & (stripes - 1);
+        counts.getAndIncrement(stripe * buckets + bucket(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the state of the histogram.
+     * The recording may continue while the snapshot is taken,
+     * so the snapshot need not be exactly consistent.
+     * @return the snapshot
+     */
+    public Snapshot snapshot(){
+        long[] merged = new long[buckets];
+        for (int i = 0; i < counts.length(); i++){
+            merged[i % buckets] += counts.get(i);
+        }
+        return new Snapshot(merged, sum.sum(), max.get());
+    }
+
+    /**
+     * Get the name of the histogram.
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Get the unit of the recorded values.
+     * @return the unit, e.g. `µs`, or an empty string for the plain numbers
+     */
+    public String getUnit(){
+        return unit;
+    }
+
+    void reset(){
+        for (int i = 0; i < counts.length(); i++){
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Get the bucket of a value.
+     * @param value: the non-negative value
+     * @return the index of the bucket
+     */
+    static int bucket(long value){
+        if (value < subBuckets){
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return (exponent - subBucketBits + 1) * subBuckets + sub;
+    }
+
+    /**
+     * Get the highest value falling into a bucket.
+     * @param bucket: the index of the bucket
+     * @return the highest value of the bucket
+     */
+    static long highestValue(int bucket){
+        if (bucket < subBuckets){
+            return bucket;
+        }
+        int exponent = bucket / subBuckets + subBucketBits - 1;
+        long sub = bucket % subBuckets;
+        long lowest = (subBuckets + sub) << (exponent - subBucketBits);
+        return lowest + (1L << (exponent - subBucketBits)) - 1;
+    }
+
+    /**
+     * Recorded values of a histogram at some moment.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max){
+            this.counts = counts;
+            long total = 0;
+            for (long c: counts){
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Get the number of the recorded values.
+         * @return the number of the values
+         */
+        public long getCount(){
+            return count;
+        }
+
+        /**
+         * Get the mean of the recorded values.
+         * @return the mean, 0 if nothing was recorded
+         */
+        public double getMean(){
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get the highest recorded value.
+         * @return the maximum, 0 if nothing was recorded
+         */
+        public long getMax(){
+            return max;
+        }
+
+        /**
+         * Get the value below which the given fraction of the recorded values is.
+         * @param fraction: the fraction, e.g. 0.99 for the 99th percentile
+         * @return the highest value of the bucket with the percentile,
+         * but at most the maximum; 0 if nothing was recorded
+         */
+        public long getPercentile(double fraction){
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if (seen >= rank && seen > 0){
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return 0;
+        }
+    }
+}
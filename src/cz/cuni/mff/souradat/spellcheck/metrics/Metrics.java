@@ -0,0 +1,123 @@
+package cz.cuni.mff.souradat.spellcheck.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the runtime metrics of the program: counters, rates,
+ * histograms and the durations of the startup phases.
+ * The metrics are registered once (typically in static fields of the
+ * measured classes) and recorded without any locking, so the recording
+ * can stay on all the time.
+ */
+public class Metrics {
+    private static final List<Counter> counters = new ArrayList<>();
+    private static final List<Rate> rates = new ArrayList<>();
+    private static final List<Histogram> histograms = new ArrayList<>();
+    /** Duration of the startup phases in nanoseconds, in the order of their (first) recording.*/
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private Metrics(){
+    }
+
+    /**
+     * Register a new counter.
+     * @param name: the name shown in the report
+     * @return the counter
+     */
+    public static synchronized Counter counter(String name){
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Register a new rate.
+     * @param name: the name of the processed items shown in the report
+     * @return the rate
+     */
+    public static synchronized Rate rate(String name){
+        Rate rate = new Rate(name);
+        rates.add(rate);
+        return rate;
+    }
+
+    /**
+     * Register a new histogram.
+     * @param name: the name shown in the report
+     * @param unit: the unit of the recorded values, e.g. `µs`, or an empty string
+     * @return the histogram
+     */
+    public static synchronized Histogram histogram(String name, String unit){
+        Histogram histogram = new Histogram(name, unit);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Record the duration of a startup phase (e.g. parsing of the MorfFlex file).
+     * A repeated phase keeps its last duration.
+     * @param phase: the name of the phase
+     * @param nanos: the duration in nanoseconds
+     */
+    public static synchronized void recordPhase(String phase, long nanos){
+        phases.put(phase, nanos);
+    }
+
+    /**
+     * Get the duration of a startup phase.
+     * @param phase: the name of the phase
+     * @return the duration in nanoseconds, or -1 if the phase was not recorded
+     */
+    public static synchronized long getPhase(String phase){
+        return phases.getOrDefault(phase, -1L);
+    }
+
+    /**
+     * Get the names of the recorded startup phases.
+     * @return the names in the order of their recording
+     */
+    public static synchronized List<String> getPhases(){
+        return new ArrayList<>(phases.keySet());
+    }
+
+    /**
+     * Reset all the counters, rates and histograms.
+     * The durations of the startup phases are kept.
+     */
+    public static synchronized void reset(){
+        counters.forEach(Counter::reset);
+        rates.forEach(Rate::reset);
+        histograms.forEach(Histogram::reset);
+    }
+
+    /**
+     * Create a human readable report of all the metrics.
+     * @return the report, one metric per line
+     */
+    public static synchronized String report(){
+        StringBuilder report = new StringBuilder();
+        for (Counter counter: counters){
+            report.append(String.format("%s: %d%n", counter.getName(), counter.get()));
+        }
+        for (Rate rate: rates){
+            double seconds = rate.getNanos() / 1e9;
+            report.append(String.format("%s: %d in %.3f s (%.0f per second)%n", rate.getName(),
+                rate.getItems(), seconds, seconds == 0 ? 0 : rate.getItems() / seconds));
+        }
+        for (Histogram histogram: histograms){
+            Histogram.Snapshot snapshot = histogram.snapshot();
+            String unit = histogram.getUnit().isEmpty() ? "" : " " + histogram.getUnit();
+            report.append(String.format("%s: count %d, mean %.1f%s, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%s%n",
+                histogram.getName(), snapshot.getCount(), snapshot.getMean(), unit,
+                snapshot.getPercentile(0.5), snapshot.getPercentile(0.9), snapshot.getPercentile(0.99),
+                snapshot.getPercentile(0.999), snapshot.getMax(), unit));
+        }
+        for (Map.Entry<String, Long> phase: phases.entrySet()){
+            report.append(String.format("startup %s: %.3f s%n", phase.getKey(), phase.getValue() / 1e9));
+        }
+        return report.toString();
+    }
+}
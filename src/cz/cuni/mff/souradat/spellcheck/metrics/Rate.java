@@ -0,0 +1,56 @@
+package cz.cuni.mff.souradat.spellcheck.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of processed items together with the time of their processing,
+ * reported as items per second.
+ */
+public class Rate {
+    private final String name;
+    private final LongAdder items = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    Rate(String name){
+        this.name = name;
+    }
+
+    /**
+     * Record one run of the processing.
+     * @param processed: the number of the processed items
+     * @param elapsedNanos: the duration of the processing in nanoseconds
+     */
+    public void record(long processed, long elapsedNanos){
+        items.add(processed);
+        nanos.add(elapsedNanos);
+    }
+
+    /**
+     * Get the number of the processed items.
+     * @return the number of the items
+     */
+    public long getItems(){
+        return items.sum();
+    }
+
+    /**
+     * Get the total time of the processing.
+     * @return the time in nanoseconds
+     */
+    public long getNanos(){
+        return nanos.sum();
+    }
+
+    /**
+     * Get the name of the rate.
+     * @return the name
+     */
+    public String getName(){
+        return name;
+    }
+
+    void reset(){
+        items.reset();
+        nanos.reset();
+    }
+}
@@ -1,16 +1,16 @@
 package cz.cuni.mff.souradat.spellcheck.shell;
 
-import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+import java.io.UncheckedIOException;
 
 class AddFormCommand implements ICommand {
     private static final String name = "add";
     private static final String help = "Adds the given form to the lexicon of known words.";
     private static final String usage = "add novéslovíčko";
 
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
 
-    public AddFormCommand(SpellChecker spellChecker) {
-        this.spellChecker = spellChecker;
+    public AddFormCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
     }
 
     @Override
@@ -34,7 +34,13 @@ class AddFormCommand implements ICommand {
             return "Unsuccessful. Expected exactly one parameter.\n Example usage of this command is: " + getUsage();
         }
         String form = params[0];
-        boolean succ = spellChecker.addForm(form);
+        boolean succ;
+        try{
+            succ = loader.get().addForm(form);
+        }
+        catch(UnsupportedOperationException | IllegalArgumentException | UncheckedIOException e){
+            return "Unsuccessful. " + e.getMessage();
+        }
         if (succ){
             return String.format("The form %s was successfully added to the lexicon of known forms.", form);
         }
@@ -2,14 +2,14 @@ package cz.cuni.mff.souradat.spellcheck.shell;
 
 import java.util.StringJoiner;
 
-import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+import cz.cuni.mff.souradat.spellcheck.lexicon.Suggestion;
 
 class AlterCommand implements ICommand {
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
     private int defaultAlternationsCount = 5;
 
-    public AlterCommand(SpellChecker spellChecker){
-        this.spellChecker = spellChecker;
+    public AlterCommand(SpellCheckerLoader loader){
+        this.loader = loader;
     }
     private static final String name = "alter";
     private static final String help = "Suggest alternations of the given form. Find `n` closest known words.";
@@ -25,15 +25,18 @@ class AlterCommand implements ICommand {
         return name;
     }
 
+    /**
+     * Get the `n` best known words with distance at most 2 from the given word,
+     * the closest and the most frequent ones first.
+     * @param word: the word to be alternated
+     * @param n: the maximal number of the words
+     * @return the words, one per line
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker#suggest
+     */
     private String getNClosestWords(String word, int n){
         StringJoiner result = new StringJoiner("\n");
-        int counter = 0;
-        for (String alternation: spellChecker.alter(word)){
-            counter++;
-            result.add(alternation);
-            if (counter >= n){
-                break;
-            }
+        for (Suggestion suggestion: loader.get().suggest(word, 2, n)){
+            result.add(suggestion.form());
         }
         return result.toString();
     }
@@ -0,0 +1,309 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+/** Non-interactive checking of many files with one loaded lexicon.
+ * The given files and all the files in the given directories (recursively)
+ * are checked in parallel on a work-stealing pool of `jobs` threads,
+ * the largest files first, so that no large file is left for the end
+ * when the other threads have nothing to do.
+ *
+ * The report of every file (the same as by the command `check`) is written
+ * to the output directory under the path of the file relative to the parent
+ * of the given directory (e.g. `docs/a/b.txt` for the file `a/b.txt` in the
+ * directory `docs`), and a line with the number of the unknown words is
+ * printed when the file is done. The paths are rejected before the checking
+ * if two files would have the same report (e.g. `x/b.txt` for the file `b.txt`
+ * in both the directories `a/x` and `c/x`). Without the output directory the reports
+ * are printed in the order of the files, every one after a header with
+ * the name of the file; the reports of the files checked meanwhile are
+ * written to temporary files, so they are not kept in memory.
+ * The files that could not be checked are counted and reported.
+ * At the end the throughput (files and megabytes per second) is printed.
+ * In the incremental mode only the rows changed since the last run are checked.
+ */
+public class BatchChecker {
+    private final SpellChecker spellChecker;
+    private final int jobs;
+    private final Path outDirectory;
+    private final boolean incremental;
+    private final PrintStream console = System.out;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder unknownWords = new LongAdder();
+
+    /**
+     * A file to be checked.
+     * @param file: the absolute path of the file
+     * @param report: the path of the report relative to the output directory
+     * @param size: the size of the file in bytes
+     */
+    private record Job(Path file, Path report, long size){
+    }
+
+    /**
+     * Create the batch checker.
+     * @param spellChecker: the spell checker shared by all the threads
+     * @param jobs: the number of the threads
+     * @param outDirectory: the directory of the reports, or null to print the reports
+     * @param incremental: whether the files are checked incrementally
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker#checkIncremental
+     */
+    public BatchChecker(SpellChecker spellChecker, int jobs, Path outDirectory, boolean incremental){
+        this.spellChecker = spellChecker;
+        this.jobs = Math.max(1, jobs);
+        this.outDirectory = outDirectory == null ? null : outDirectory.toAbsolutePath().normalize();
+        this.incremental = incremental;
+    }
+
+    /**
+     * Check all the files of the given paths and print the summary.
+     * @param paths: the files and the directories to be checked
+     * @return true if all the files were checked, false if some of them failed
+     * @throws IOException if a directory cannot be listed or a path does not exist
+     * @throws InterruptedException if the waiting for the files was interrupted
+     */
+    public boolean run(List<String> paths) throws IOException, InterruptedException{
+        List<Job> files = collect(paths);
+        // the largest first, the pool takes the submitted files in this order
+        files.sort(Comparator.comparingLong(Job::size).reversed());
+        long bytes = files.stream().mapToLong(Job::size).sum();
+
+        ExecutorService pool = Executors.newWorkStealingPool(jobs);
+        long start = System.nanoTime();
+        List<Future<Path>> reports = new ArrayList<>(files.size());
+        int done = 0;
+        try{
+            for (Job job: files){
+                reports.add(pool.submit(() -> check(job)));
+            }
+            for (; done < files.size(); done++){
+                Job job = files.get(done);
+                try{
+                    Path report = reports.get(done).get();
+                    if (outDirectory == null){
+                        print(job, report);
+                    }
+                }
+                catch(ExecutionException e){
+                    errors.increment();
+                    // the work-stealing pool wraps the exceptions of the tasks
+                    Throwable cause = e.getCause();
+                    while (!(cause instanceof IOException) && cause.getCause() != null){
+                        cause = cause.getCause();
+                    }
+                    System.err.println("Unsuccessful checking of the file " + job.file() + ". "
+                        + (cause instanceof IOException ? cause.getMessage() : cause));
+                }
+            }
+        }
+        finally{
+            pool.shutdownNow();
+            if (outDirectory == null){
+                discard(reports.subList(done, reports.size()));
+            }
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        console.printf("Checked %d files (%.1f MB) in %.2f s with %d jobs: %.1f files/s, %.1f MB/s, %d unknown words, %d errors.%n",
+            files.size() - errors.sum(), bytes / 1e6, seconds, jobs,
+            (files.size() - errors.sum()) / seconds, bytes / 1e6 / seconds, unknownWords.sum(), errors.sum());
+        return errors.sum() == 0;
+    }
+
+    /**
+     * Find all the files of the given paths, every file only once.
+     * The files in the output directory are skipped.
+     * @param paths: the files and the directories
+     * @return the files to be checked
+     * @throws IOException if a directory cannot be listed, a path does not exist
+     * or two files would have the same report in the output directory
+     */
+    private List<Job> collect(List<String> paths) throws IOException{
+        Map<Path, Job> files = new LinkedHashMap<>();
+        Map<Path, Path> reports = new HashMap<>();
+        for (String name: paths){
+            Path root = Path.of(name).toAbsolutePath().normalize();
+            if (!Files.exists(root)){
+                throw new FileNotFoundException("The file or directory " + name + " does not exist.");
+            }
+            Path base = root.getParent() == null ? root : root.getParent();
+            try(Stream<Path> walk = Files.walk(root)){
+                for (Path file: (Iterable<Path>) walk::iterator){
+                    if (!Files.isRegularFile(file) || (outDirectory != null && file.startsWith(outDirectory))){
+                        continue;
+                    }
+                    if (files.containsKey(file)){
+                        continue;
+                    }
+                    Path report = base.relativize(file);
+                    Path clash = reports.putIfAbsent(report, file);
+                    if (clash != null && outDirectory != null){
+                        throw new IOException(String.format("The reports of the files %s and %s would have the same path %s in the output directory.",
+                            clash, file, outDirectory.resolve(report)));
+                    }
+                    files.put(file, new Job(file, report, Files.size(file)));
+                }
+            }
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Check one file and write its report to the output directory,
+     * or to a temporary file if the reports are printed.
+     * @param job: the file
+     * @return the written report
+     * @throws IOException if the file cannot be read or the report cannot be written
+     */
+    private Path check(Job job) throws IOException{
+        long start = System.nanoTime();
+        if (outDirectory == null){
+            Path report = Files.createTempFile("spellcheck", ".report");
+            try{
+                check(job.file(), Files.newBufferedWriter(report, Charset.defaultCharset()));
+            }
+            catch(IOException | RuntimeException e){
+                Files.deleteIfExists(report);
+                throw e;
+            }
+            return report;
+        }
+        Path report = outDirectory.resolve(job.report());
+        Files.createDirectories(report.getParent());
+        long unknown = check(job.file(), Files.newBufferedWriter(report, Charset.defaultCharset()));
+        console.printf("%s: %d unknown words, %.1f kB in %.0f ms, report %s%n",
+            job.file(), unknown, job.size() / 1e3, (System.nanoTime() - start) / 1e6, report);
+        return report;
+    }
+
+    /**
+     * Print the report of a file after a header with its name
+     * and delete the temporary report.
+     * @param job: the file
+     * @param report: the temporary report
+     * @throws IOException if the report cannot be read
+     */
+    private void print(Job job, Path report) throws IOException{
+        try{
+            console.println("==> " + job.file() + " <==");
+            Files.copy(report, console);
+            console.flush();
+        }
+        finally{
+            Files.deleteIfExists(report);
+        }
+    }
+
+    /**
+     * Cancel the checking of the files whose reports were not printed
+     * and delete the temporary reports of those already checked.
+     * @param reports: the reports not printed
+     */
+    private static void discard(List<Future<Path>> reports){
+        for (Future<Path> report: reports){
+            report.cancel(true);
+            if (!report.isCancelled()){
+                try{
+                    Files.deleteIfExists(report.get());
+                }
+                catch(IOException | ExecutionException | InterruptedException e){
+                    // failed checking, or the report is left in the temporary directory
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the file and write the report to the given writer, which is closed.
+     * @param file: the checked file, in the default charset
+     * @param report: the writer of the report
+     * @return the number of the reported unknown words
+     * @throws IOException if the file cannot be read or the report cannot be written
+     */
+    private long check(Path file, Writer report) throws IOException{
+        LineCountingWriter counted = new LineCountingWriter(report);
+        try(report;
+            BufferedWriter out = new BufferedWriter(counted)){
+            boolean checked;
+            if (incremental){
+                checked = spellChecker.checkIncremental(file, out);
+            }
+            else{
+                try(BufferedReader in = new BufferedReader(new FileReader(file.toFile()))){
+                    checked = spellChecker.check(in, out);
+                }
+            }
+            if (!checked){
+                throw new IOException("The file cannot be read or the report cannot be written.");
+            }
+        }
+        // without the header line
+        long unknown = Math.max(0, counted.getLines() - 1);
+        unknownWords.add(unknown);
+        return unknown;
+    }
+
+    /**
+     * Writer counting the written lines.
+     */
+    private static class LineCountingWriter extends FilterWriter {
+        private long lines;
+
+        LineCountingWriter(Writer out){
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException{
+            if (c == '\n'){
+                lines++;
+            }
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException{
+            for (int i = offset; i < offset + length; i++){
+                if (buffer[i] == '\n'){
+                    lines++;
+                }
+            }
+            super.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String s, int offset, int length) throws IOException{
+            for (int i = offset; i < offset + length; i++){
+                if (s.charAt(i) == '\n'){
+                    lines++;
+                }
+            }
+            super.write(s, offset, length);
+        }
+
+        /**
+         * Get the number of the written line ends.
+         * @return the number of the lines
+         */
+        long getLines(){
+            return lines;
+        }
+    }
+}
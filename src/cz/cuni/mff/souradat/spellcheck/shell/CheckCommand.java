@@ -5,19 +5,20 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 
 import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
 
 class CheckCommand implements ICommand {
     private static final String name = "check";
     private static final String help = "Check the given file and report unknown words in the second file.";
-    private static final String usage = "check inputFilename outputFilename";
+    private static final String usage = "check inputFilename outputFilename [parallel|incremental]";
 
 
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
 
-    public CheckCommand(SpellChecker spellChecker) {
-        this.spellChecker = spellChecker;
+    public CheckCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
     }
 
     @Override
@@ -33,21 +34,53 @@ class CheckCommand implements ICommand {
     @Override
     /**Executes the check command.
      * Calls the SpellChecker method check(in,out) to check the file.
+     * If the lexicon is still being loaded, the checking is queued.
      * @return message about success of the checking the file
      * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker
      */
     public String execute(String... params) {
-        if (params.length != 2){
-            return "Unsuccessful. This command expects exactly 2 arguments.\nThe example usage is: " + getUsage();
+        boolean parallel = params.length == 3 && params[2].equals("parallel");
+        boolean incremental = params.length == 3 && params[2].equals("incremental");
+        if (params.length != 2 && !parallel && !incremental){
+            return "Unsuccessful. This command expects 2 arguments and optionally `parallel` or `incremental`.\nThe example usage is: " + getUsage();
         }
         String inFilename = params[0];
         String outFilename = params[1];
+        if (!loader.isReady()){
+            loader.queue(spellChecker -> check(spellChecker, inFilename, outFilename, parallel, incremental));
+            return String.format("The checking of the file %s is queued until the lexicon is loaded.", inFilename);
+        }
+        return check(loader.get(), inFilename, outFilename, parallel, incremental);
+    }
+
+    /**
+     * Check the file and report the unknown words to the output file.
+     * @param spellChecker: the loaded spell checker
+     * @param inFilename: the checked file
+     * @param outFilename: the file of the report
+     * @param parallel: whether the file is checked in parallel
+     * @param incremental: whether the file is checked incrementally
+     * @return message about success of the checking the file
+     */
+    private String check(SpellChecker spellChecker, String inFilename, String outFilename, boolean parallel, boolean incremental){
         boolean succ = false;
-        try(BufferedReader in = new BufferedReader(new FileReader(inFilename)); BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
-            succ = spellChecker.check(in, out);
+        if (parallel || incremental){
+            try(BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
+                succ = parallel
+                    ? spellChecker.checkParallel(Path.of(inFilename), out)
+                    : spellChecker.checkIncremental(Path.of(inFilename), out);
+            }
+            catch(IOException e){
+                return String.format("Problems with writing to the file %s. Please, check that you have permission to write to the file %s", outFilename, outFilename);
+            }
         }
-        catch(IOException e){
-            return String.format("Problems with reading the file %s or with writing to the file %s. Please, check that the file %s exists and that you have permission to write to the file %s", inFilename, outFilename, inFilename, outFilename);
+        else{
+            try(BufferedReader in = new BufferedReader(new FileReader(inFilename)); BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
+                succ = spellChecker.check(in, out);
+            }
+            catch(IOException e){
+                return String.format("Problems with reading the file %s or with writing to the file %s. Please, check that the file %s exists and that you have permission to write to the file %s", inFilename, outFilename, inFilename, outFilename);
+            }
         }
         if(succ){
             return String.format("Successfully checked the file %s and reported the unknown words to the file %s", inFilename, outFilename);
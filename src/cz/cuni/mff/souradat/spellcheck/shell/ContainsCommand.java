@@ -1,16 +1,14 @@
 package cz.cuni.mff.souradat.spellcheck.shell;
 
-import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
-
 class ContainsCommand implements ICommand {
     private static final String name = "has";
     private static final String help = "Checks, whether a given form is in the lexion or not.";
     private static final String usage = "has předivnéslovo";
 
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
 
-    public ContainsCommand(SpellChecker spellChecker) {
-        this.spellChecker = spellChecker;
+    public ContainsCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
     }
 
     @Override
@@ -34,7 +32,7 @@ class ContainsCommand implements ICommand {
             return "Unsuccessful. Expected exactly one parameter.\n Example usage of this command is: " + getUsage();
         }
         String form = params[0];
-        boolean succ = spellChecker.contains(form);
+        boolean succ = loader.get().contains(form);
         return Boolean.toString(succ);
 
     }
@@ -5,6 +5,7 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.io.BufferedReader;
 
 import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
@@ -12,12 +13,12 @@ import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
 class CorrectCommand implements ICommand {
     private static final String name = "correct";
     private static final String help = "Correct a given file and report unknown words and the suggestions to the second";
-    private static final String usage = "correct inputFilename outputFilename";
+    private static final String usage = "correct inputFilename outputFilename [parallel|incremental|grouped]";
 
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
 
-    public CorrectCommand(SpellChecker spellChecker) {
-        this.spellChecker = spellChecker;
+    public CorrectCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
     }
 
     @Override
@@ -32,21 +33,55 @@ class CorrectCommand implements ICommand {
     @Override
     /**Executes the correct command.
      * Calls the SpellChecker method correct(in,out) to correct the file.
+     * If the lexicon is still being loaded, the correcting is queued.
      * @return message about success of the correcting the file
      * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker
      */
     public String execute(String... params) {
-        if (params.length != 2){
-            return "Unsuccessful. This command expects exactly 2 arguments.\nThe example usage is: " + getUsage();
+        boolean parallel = params.length == 3 && params[2].equals("parallel");
+        boolean incremental = params.length == 3 && params[2].equals("incremental");
+        boolean grouped = params.length == 3 && params[2].equals("grouped");
+        if (params.length != 2 && !parallel && !incremental && !grouped){
+            return "Unsuccessful. This command expects 2 arguments and optionally `parallel`, `incremental` or `grouped`.\nThe example usage is: " + getUsage();
         }
         String inFilename = params[0];
         String outFilename = params[1];
+        if (!loader.isReady()){
+            loader.queue(spellChecker -> correct(spellChecker, inFilename, outFilename, parallel, incremental, grouped));
+            return String.format("The correcting of the file %s is queued until the lexicon is loaded.", inFilename);
+        }
+        return correct(loader.get(), inFilename, outFilename, parallel, incremental, grouped);
+    }
+
+    /**
+     * Correct the file and report the unknown words to the output file.
+     * @param spellChecker: the loaded spell checker
+     * @param inFilename: the corrected file
+     * @param outFilename: the file of the report
+     * @param parallel: whether the file is corrected in parallel
+     * @param incremental: whether the file is corrected incrementally
+     * @param grouped: whether every unknown word is reported once with its rows
+     * @return message about success of the correcting the file
+     */
+    private String correct(SpellChecker spellChecker, String inFilename, String outFilename, boolean parallel, boolean incremental, boolean grouped){
         boolean succ = false;
-        try(BufferedReader in = new BufferedReader(new FileReader(inFilename)); BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
-            succ = spellChecker.correct(in, out);
+        if (parallel || incremental){
+            try(BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
+                succ = parallel
+                    ? spellChecker.correctParallel(Path.of(inFilename), out, 1)
+                    : spellChecker.correctIncremental(Path.of(inFilename), out, 1);
+            }
+            catch(IOException e){
+                return String.format("Problems with writing to the file %s. Please, check that you have permission to write to the file %s", outFilename, outFilename);
+            }
         }
-        catch(IOException e){
-            return String.format("Problems with reading the file %s or with writing to the file %s. Please, check that the file %s exists and that you have permission to write to the file %s", inFilename, outFilename, inFilename, outFilename);
+        else{
+            try(BufferedReader in = new BufferedReader(new FileReader(inFilename)); BufferedWriter out = new BufferedWriter(new FileWriter(outFilename))){
+                succ = grouped ? spellChecker.correctGrouped(in, out, 1) : spellChecker.correct(in, out);
+            }
+            catch(IOException e){
+                return String.format("Problems with reading the file %s or with writing to the file %s. Please, check that the file %s exists and that you have permission to write to the file %s", inFilename, outFilename, inFilename, outFilename);
+            }
         }
         if(succ){
             return String.format("Successfully corrected the file %s and reported the unknown words with suggestions to the file %s", inFilename, outFilename);
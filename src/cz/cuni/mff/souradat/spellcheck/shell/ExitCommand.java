@@ -1,16 +1,14 @@
 package cz.cuni.mff.souradat.spellcheck.shell;
 
-import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
-
 class ExitCommand implements ICommand {
     private static final String name = "exit";
     private static final String help = "Exits the program";
     private static final String usage = "exit";
 
-    private SpellChecker spellChecker;
+    private final SpellCheckerLoader loader;
 
-    public ExitCommand(SpellChecker spellChecker) {
-        this.spellChecker = spellChecker;
+    public ExitCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
     }
 
     @Override
@@ -24,8 +22,12 @@ class ExitCommand implements ICommand {
 
     @Override
     /**Exits the program.
+     * Stores the data that should survive the run before exiting,
+     * after the queued commands are done. Does not wait for the loading
+     * of the lexicon.
      */
     public String execute(String... params) {
+        loader.close();
         System.exit(0);
         return null;
     }
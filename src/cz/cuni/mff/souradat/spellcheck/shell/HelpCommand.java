@@ -3,15 +3,11 @@ package cz.cuni.mff.souradat.spellcheck.shell;
 import java.util.List;
 import java.util.StringJoiner;
 
-import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
-
 class HelpCommand implements ICommand {
     List<ICommand> commands;
-    private SpellChecker spellChecker;
 
-    public HelpCommand(List<ICommand> commands, SpellChecker spellChecker){
+    public HelpCommand(List<ICommand> commands){
         this.commands = commands;
-        this.spellChecker = spellChecker;
     }
     private static final String name = "help";
     private static final String help = "Print this help";
@@ -0,0 +1,176 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Histogram;
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.Tokenizer;
+
+/** Client measuring the throughput and the latency of the server.
+ * It opens the given number of connections to the server on localhost,
+ * every connection sends the given number of requests one after another,
+ * and the latencies of the requests are recorded in a histogram.
+ * The requests are made from the words (`has`, `alter`)
+ * or the lines (`check`, `correct`) of the given text file.
+ * @see cz.cuni.mff.souradat.spellcheck.shell.Server
+ */
+public class LoadGenerator {
+    /** Number of the lines of the text of one check or correct request.*/
+    private static final int linesPerRequest = 20;
+
+    private final int port;
+    private final String kind;
+    private final int connections;
+    private final int requestsPerConnection;
+    private final List<String> words = new ArrayList<>();
+    private final List<String> lines;
+
+    private final Histogram latency = Metrics.histogram("request latency", "µs");
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Create the load generator.
+     * @param textFilename: the text file the requests are made from
+     * @param kind: the kind of the requests: `has`, `alter`, `check` or `correct`
+     * @param connections: the number of the connections
+     * @param requestsPerConnection: the number of the requests sent by every connection
+     * @param port: the port of the server
+     * @throws IOException if the text file cannot be read
+     * @throws IllegalArgumentException if the kind is unknown or the file has no words
+     */
+    public LoadGenerator(String textFilename, String kind, int connections, int requestsPerConnection, int port) throws IOException{
+        if (!List.of("has", "alter", "check", "correct").contains(kind)){
+            throw new IllegalArgumentException("Unknown kind of the requests " + kind + ", expected has, alter, check or correct.");
+        }
+        this.kind = kind;
+        this.connections = connections;
+        this.requestsPerConnection = requestsPerConnection;
+        this.port = port;
+        lines = Files.readAllLines(Path.of(textFilename), StandardCharsets.UTF_8);
+        Tokenizer tokenizer = new Tokenizer(new StringReader(String.join("\n", lines)));
+        while (tokenizer.next()){
+            words.add(tokenizer.getWord());
+        }
+        if (words.isEmpty()){
+            throw new IllegalArgumentException("The file " + textFilename + " contains no words.");
+        }
+    }
+
+    /**
+     * Run all the connections and wait for them.
+     * @return the report with the throughput and the latency percentiles
+     * @throws InterruptedException if the waiting was interrupted
+     */
+    public String run() throws InterruptedException{
+        ExecutorService executor = Server.newConnectionExecutor();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int c = 0; c < connections; c++){
+            int connection = c;
+            executor.execute(() -> {
+                try{
+                    start.await();
+                    sendRequests(connection);
+                }
+                catch(IOException e){
+                    errors.increment();
+                }
+                catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                finally{
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        Histogram.Snapshot snapshot = latency.snapshot();
+        return String.format("%d %s requests over %d connections in %.3f s: %.0f requests per second, %d errors%n"
+            + "latency: mean %.1f µs, p50 %d µs, p90 %d µs, p99 %d µs, p99.9 %d µs, max %d µs",
+            snapshot.getCount(), kind, connections, seconds, snapshot.getCount() / seconds, errors.sum(),
+            snapshot.getMean(), snapshot.getPercentile(0.5), snapshot.getPercentile(0.9),
+            snapshot.getPercentile(0.99), snapshot.getPercentile(0.999), snapshot.getMax());
+    }
+
+    /**
+     * Send the requests of one connection and record their latencies.
+     * @param connection: the index of the connection, it chooses the words or lines
+     * @throws IOException if the connection fails
+     */
+    private void sendRequests(int connection) throws IOException{
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+            for (int i = 0; i < requestsPerConnection; i++){
+                int index = connection * requestsPerConnection + i;
+                long begin = System.nanoTime();
+                writeRequest(out, index);
+                out.flush();
+                if (!readResponse(in)){
+                    errors.increment();
+                }
+                latency.record((System.nanoTime() - begin) / 1000);
+            }
+            out.write("quit\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Write the request with the given index.
+     * @param out: the writer of the connection
+     * @param index: the index choosing the word or the lines
+     * @throws IOException if the writing fails
+     */
+    private void writeRequest(BufferedWriter out, int index) throws IOException{
+        if (kind.equals("has") || kind.equals("alter")){
+            out.write(kind + " " + words.get(index % words.size()) + "\n");
+            return;
+        }
+        out.write(kind + "\n");
+        int first = (int) ((long) index * linesPerRequest % Math.max(1, lines.size()));
+        for (int i = first; i < Math.min(lines.size(), first + linesPerRequest); i++){
+            String line = lines.get(i);
+            if (line.startsWith(".")){
+                out.write('.');
+            }
+            out.write(line);
+            out.write('\n');
+        }
+        out.write(".\n");
+    }
+
+    /**
+     * Read one response up to the line with a single dot.
+     * @param in: the reader of the connection
+     * @return true for the status `OK`, false otherwise
+     * @throws IOException if the connection ended before the end of the response
+     */
+    private static boolean readResponse(BufferedReader in) throws IOException{
+        String status = in.readLine();
+        String line;
+        while ((line = in.readLine()) != null){
+            if (line.equals(".")){
+                return "OK".equals(status);
+            }
+        }
+        throw new EOFException("The server closed the connection.");
+    }
+}
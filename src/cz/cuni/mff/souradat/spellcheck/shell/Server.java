@@ -0,0 +1,391 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+/** Server serving the requests of many clients over local TCP connections,
+ * with the lexicon loaded only once.
+ *
+ * The protocol is line based (UTF-8). A request is one line with the command
+ * and its arguments separated by spaces:
+ *    - `has form`, `add form`, `alter form [n]`, `stats` (the same as in the shell),
+ *    - `check` and `correct [distance]`, followed by the lines of the text
+ *      to be checked and a line with a single dot,
+ *    - `quit` closes the connection.
+ * The response is the line `OK` (or `ERR` and the error message) followed
+ * by the lines of the result and a line with a single dot. The lines of the
+ * text and of the result starting with a dot are sent with one more dot
+ * at the beginning (as in SMTP).
+ *
+ * Every connection is served by its own (virtual, if the Java runtime has them)
+ * thread. The number of the connections is limited, the next connections wait
+ * in the backlog of the server socket. The number of the requests processed
+ * at once is limited too, the other requests wait for at most
+ * `queueTimeout` seconds and then they are rejected.
+ *
+ * The memory of the received texts is bounded: the request lines are at most
+ * `maxCommandLength` characters long, and before a line of a text is read,
+ * `maxLineLength` characters are reserved from the budget shared by all the
+ * connections (the unused part is returned after the reading). The text
+ * holds its part of the budget until it is processed. A request which
+ * does not get the budget in `queueTimeout` seconds, or whose line or text
+ * is too long, is rejected and its connection is closed (the rest of the
+ * text is not read). The suggestions of a correct request are found
+ * on the thread of the connection, so the requests use at most
+ * as many threads as the limit of the processed requests.
+ */
+public class Server {
+    /** System property setting the maximal number of the requests processed at once
+     * (default: the number of the cores).*/
+    public static final String concurrencyProperty = "spellcheck.server.concurrency";
+    /** System property setting the maximal number of the open connections (default 1000).*/
+    public static final String connectionsProperty = "spellcheck.server.connections";
+    /** System property setting the maximal total length of the texts received and processed
+     * at once by all the connections, in characters (default 2^26).*/
+    public static final String bufferProperty = "spellcheck.server.buffer";
+    /** Default port of the server.*/
+    public static final int defaultPort = 7341;
+
+    /** Maximal length of the text of one check or correct request in characters.*/
+    private static final int maxTextLength = 1 << 24;
+    /** Maximal length of a line of the text in characters.*/
+    private static final int maxLineLength = 1 << 16;
+    /** Maximal length of a request line in characters.*/
+    private static final int maxCommandLength = 1 << 12;
+    /** Maximal waiting of a request for the processing in seconds.*/
+    private static final int queueTimeout = 30;
+
+    private final SpellChecker spellChecker;
+    private final int port;
+    private final Map<String, ICommand> commands = new HashMap<>();
+    private final Semaphore requests;
+    private final Semaphore connections;
+    /** The characters of the texts which can be received at once.*/
+    private final Semaphore buffer;
+
+    /**
+     * Create the server.
+     * @param spellChecker: the spell checker shared by all the connections
+     * @param port: the port on the loopback interface
+     */
+    public Server(SpellChecker spellChecker, int port){
+        this.spellChecker = spellChecker;
+        this.port = port;
+        SpellCheckerLoader loaded = new SpellCheckerLoader(spellChecker);
+        for (ICommand command: new ICommand[]{new ContainsCommand(loaded), new AddFormCommand(loaded),
+            new AlterCommand(loaded), new StatsCommand(loaded)}){
+            commands.put(command.getName(), command);
+        }
+        requests = new Semaphore(Integer.getInteger(concurrencyProperty, Runtime.getRuntime().availableProcessors()), true);
+        connections = new Semaphore(Integer.getInteger(connectionsProperty, 1000));
+        buffer = new Semaphore(Math.max(maxLineLength, Integer.getInteger(bufferProperty, 1 << 26)));
+    }
+
+    /**
+     * Accept and serve the connections until the process is terminated.
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException{
+        ExecutorService executor = newConnectionExecutor();
+        // store the suggestion cache and the statistics when the server is terminated
+        Runtime.getRuntime().addShutdownHook(new Thread(spellChecker::close));
+        try(ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())){
+            System.out.printf("Listening on %s:%d.%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            while (true){
+                connections.acquireUninterruptibly();
+                Socket socket;
+                try{
+                    socket = server.accept();
+                }
+                catch(IOException e){
+                    connections.release();
+                    throw e;
+                }
+                executor.execute(() -> serve(socket));
+            }
+        }
+        finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the executor running one thread per connection,
+     * virtual threads if the Java runtime supports them (Java 21),
+     * platform daemon threads otherwise.
+     * @return the executor
+     */
+    static ExecutorService newConnectionExecutor(){
+        try{
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch(ReflectiveOperationException | UnsupportedOperationException e){
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Serve the requests of one connection until the client closes it or sends `quit`.
+     * @param socket: the socket of the connection
+     */
+    private void serve(Socket socket){
+        try(socket;
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+            try{
+                serveRequests(in, out);
+            }
+            catch(RejectedRequestException e){
+                writeResponse(out, false, e.getMessage());
+            }
+        }
+        catch(IOException e){
+            // the client closed the connection
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        finally{
+            connections.release();
+        }
+    }
+
+    /**
+     * Serve the requests of one connection until the client closes it or sends `quit`.
+     * @param in: the reader of the connection
+     * @param out: the writer of the connection
+     * @throws RejectedRequestException if a request is rejected and the connection
+     * has to be closed
+     * @throws IOException if the reading or writing fails
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void serveRequests(BufferedReader in, BufferedWriter out) throws IOException, InterruptedException{
+        String line;
+        while ((line = readLine(in, maxCommandLength)) != null){
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty()){
+                continue;
+            }
+            if (tokens[0].equals("quit")){
+                return;
+            }
+            String[] params = Arrays.copyOfRange(tokens, 1, tokens.length);
+            String text = null;
+            if (tokens[0].equals("check") || tokens[0].equals("correct")){
+                text = readText(in);
+                if (text == null){
+                    // the connection ended
+                    return;
+                }
+            }
+            Response response = null;
+            try{
+                if (requests.tryAcquire(queueTimeout, TimeUnit.SECONDS)){
+                    try{
+                        response = process(tokens[0], params, text);
+                    }
+                    finally{
+                        requests.release();
+                    }
+                }
+            }
+            finally{
+                if (text != null){
+                    buffer.release(text.length());
+                }
+            }
+            // written after releasing, so a slow client does not block the other requests
+            if (response == null){
+                writeResponse(out, false, "The server is busy, try it again later.");
+            }
+            else{
+                writeResponse(out, response.ok(), response.body());
+            }
+        }
+    }
+
+    /**
+     * Rejection of a request, after which the connection is closed.
+     */
+    private static class RejectedRequestException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RejectedRequestException(String message){
+            super(message);
+        }
+    }
+
+    /**
+     * Response to a request.
+     * @param ok: true for `OK`, false for `ERR`
+     * @param body: the body of the response (the error message for `ERR`)
+     */
+    private record Response(boolean ok, String body){
+    }
+
+    /**
+     * Process one request.
+     * @param command: the name of the command
+     * @param params: the parameters of the command
+     * @param text: the text of the check or correct request, otherwise null
+     * @return the response
+     */
+    private Response process(String command, String[] params, String text){
+        switch(command){
+            case "check":
+            case "correct":
+                int distance = 1;
+                if (params.length > 1 || (command.equals("check") && params.length > 0)){
+                    return new Response(false, "Unexpected parameters of the command " + command + ".");
+                }
+                if (params.length == 1){
+                    try{
+                        distance = Integer.parseInt(params[0]);
+                    }
+                    catch(NumberFormatException e){
+                        return new Response(false, "The parameter should be an integer.");
+                    }
+                }
+                StringWriter report = new StringWriter();
+                try(BufferedReader textReader = new BufferedReader(new StringReader(text));
+                    BufferedWriter reportWriter = new BufferedWriter(report)){
+                    boolean succ = command.equals("check")
+                        ? spellChecker.check(textReader, reportWriter)
+                        : spellChecker.correct(textReader, reportWriter, distance, false);
+                    reportWriter.flush();
+                    return new Response(succ, succ ? report.toString() : "Problem in checking the text.");
+                }
+                catch(IOException e){
+                    return new Response(false, "Problem in checking the text.");
+                }
+            default:
+                ICommand cmd = commands.get(command);
+                if (cmd == null){
+                    return new Response(false, "Unknown command");
+                }
+                return new Response(true, cmd.execute(params));
+        }
+    }
+
+    /**
+     * Read the text of a request up to the line with a single dot.
+     * The read text holds the same number of characters of the budget
+     * `buffer`, which has to be released after the text is processed.
+     * @param in: the reader of the connection
+     * @return the text, or null if the connection ended before the dot
+     * @throws RejectedRequestException if the text or its line is too long
+     * or the budget is not available in time
+     * @throws IOException if the reading fails
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private String readText(BufferedReader in) throws IOException, InterruptedException{
+        StringBuilder text = new StringBuilder();
+        boolean complete = false;
+        try{
+            while (true){
+                // the line with its end
+                int limit = Math.min(maxLineLength, maxTextLength - text.length());
+                if (limit <= 1){
+                    throw new RejectedRequestException(String.format("The text is too long, at most %d characters.", maxTextLength));
+                }
+                if (!buffer.tryAcquire(limit, queueTimeout, TimeUnit.SECONDS)){
+                    throw new RejectedRequestException("The server is busy, try it again later.");
+                }
+                String line = null;
+                try{
+                    line = readLine(in, limit - 1);
+                }
+                finally{
+                    int used = line == null || line.equals(".") ? 0 : line.length() + (line.startsWith(".") ? 0 : 1);
+                    buffer.release(limit - used);
+                }
+                if (line == null){
+                    return null;
+                }
+                if (line.equals(".")){
+                    complete = true;
+                    return text.toString();
+                }
+                if (line.startsWith(".")){
+                    line = line.substring(1);
+                }
+                text.append(line).append('\n');
+            }
+        }
+        finally{
+            if (!complete){
+                buffer.release(text.length());
+            }
+        }
+    }
+
+    /**
+     * Read one line, ended by '\n' (and an optional '\r' before it)
+     * or by the end of the input.
+     * @param in: the reader of the connection
+     * @param maxLength: the maximal length of the line
+     * @return the line without its end, or null at the end of the input
+     * @throws RejectedRequestException if the line is longer than `maxLength`,
+     * it is not read further
+     * @throws IOException if the reading fails
+     */
+    private static String readLine(BufferedReader in, int maxLength) throws IOException{
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0){
+            if (c == '\n'){
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r'){
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= maxLength){
+                throw new RejectedRequestException(String.format("Too long line, at most %d characters.", maxLength));
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Write a response: the status line, the lines of the body
+     * and the terminating dot, and flush it.
+     * @param out: the writer of the connection
+     * @param ok: true for `OK`, false for `ERR`
+     * @param body: the body of the response (the error message for `ERR`)
+     * @throws IOException if the writing fails
+     */
+    private static void writeResponse(BufferedWriter out, boolean ok, String body) throws IOException{
+        out.write(ok ? "OK\n" : "ERR\n");
+        if (body != null && !body.isEmpty()){
+            for (String line: body.split("\n")){
+                if (line.startsWith(".")){
+                    out.write('.');
+                }
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        out.write(".\n");
+        out.flush();
+    }
+}
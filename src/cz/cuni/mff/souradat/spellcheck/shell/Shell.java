@@ -10,20 +10,25 @@ import java.util.Arrays;
 import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
 
 /** Represents (non)interactive shell.
+ * The lexicon is loaded in the background, so the shell accepts
+ * the commands at once.
+ * @see cz.cuni.mff.souradat.spellcheck.shell.SpellCheckerLoader
  */
 public class Shell {
     private ArrayList<ICommand> commands = new ArrayList<ICommand>();
-    private SpellChecker spellChecker;
+    private SpellCheckerLoader loader;
 
     public Shell(){
-        spellChecker = new SpellChecker();
-        commands.add(new HelpCommand(commands, spellChecker));
-        commands.add(new ExitCommand(spellChecker));
-        commands.add(new CheckCommand(spellChecker));
-        commands.add(new CorrectCommand(spellChecker));
-        commands.add(new AddFormCommand(spellChecker));
-        commands.add(new AlterCommand(spellChecker));
-        commands.add(new ContainsCommand(spellChecker));  
+        loader = new SpellCheckerLoader(SpellChecker::new);
+        commands.add(new HelpCommand(commands));
+        commands.add(new ExitCommand(loader));
+        commands.add(new CheckCommand(loader));
+        commands.add(new CorrectCommand(loader));
+        commands.add(new AddFormCommand(loader));
+        commands.add(new AlterCommand(loader));
+        commands.add(new ContainsCommand(loader));
+        commands.add(new SuggesterCommand(loader));
+        commands.add(new StatsCommand(loader));
     }
 
     /** Processes one line containing
@@ -106,7 +111,7 @@ public class Shell {
             console.printf(commands.get(0).execute() + "\n");
             String line;
             //
-            while((line = console.readLine("> ")!= null)){
+            while((line = console.readLine("> ")) != null){
                 //String (line = console.readLine("> "));
                 String result = processLine(line);
                 if (result == null){continue;}
@@ -137,6 +142,7 @@ public class Shell {
             }
 
         }
+        loader.close();
         /*
             BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
             String line = "";
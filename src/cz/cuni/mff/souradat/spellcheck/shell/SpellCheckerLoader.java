@@ -0,0 +1,158 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+/**
+ * Loads the spell checker (its lexicon) in the background, so that the shell
+ * accepts the commands at once.
+ *
+ * The spell checker is created on a single background thread, which then
+ * runs the queued jobs (e.g. checking of a file requested during the loading)
+ * in the order of their queueing. The commands needing the spell checker
+ * wait for the loading and for the queued jobs, so they see the lexicon
+ * in the same state as without the queueing, and print the progress
+ * of the loading while waiting.
+ */
+class SpellCheckerLoader {
+    /** Period of printing the progress of the loading, in seconds.*/
+    private static final int progressInterval = 5;
+
+    private final long start = System.nanoTime();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lexicon-loading");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CompletableFuture<SpellChecker> loading;
+    /** The last queued job, or null; used only by the thread of the shell.*/
+    private Future<?> lastQueued;
+
+    /**
+     * Start the loading of the spell checker.
+     * @param create: the creation of the spell checker, run in the background
+     */
+    SpellCheckerLoader(Supplier<SpellChecker> create){
+        loading = CompletableFuture.supplyAsync(() -> {
+            SpellChecker spellChecker = create.get();
+            System.out.printf("Lexicon loaded in %.1f s.%n", (System.nanoTime() - start) / 1e9);
+            return spellChecker;
+        }, worker);
+    }
+
+    /**
+     * Use the already loaded spell checker.
+     * @param spellChecker: the loaded spell checker
+     */
+    SpellCheckerLoader(SpellChecker spellChecker){
+        loading = CompletableFuture.completedFuture(spellChecker);
+    }
+
+    /**
+     * Check, whether the spell checker is loaded and no queued job is waiting,
+     * so a command can use it at once.
+     * @return true if the spell checker can be used without waiting
+     */
+    boolean isReady(){
+        return loading.isDone() && (lastQueued == null || lastQueued.isDone());
+    }
+
+    /**
+     * Get the spell checker, wait for its loading and for the queued jobs
+     * if needed. The progress of the loading is printed while waiting.
+     * @return the loaded spell checker
+     * @throws Error if the loading failed
+     */
+    SpellChecker get(){
+        SpellChecker spellChecker = await();
+        if (lastQueued != null){
+            try{
+                lastQueued.get();
+            }
+            catch(InterruptedException | ExecutionException e){
+                // the queued jobs report their failures themselves
+            }
+            lastQueued = null;
+        }
+        return spellChecker;
+    }
+
+    /**
+     * Queue a job using the spell checker, which runs after the loading
+     * and after the previously queued jobs. Its result is printed.
+     * @param job: the job, returning the message about its result
+     */
+    void queue(Function<SpellChecker, String> job){
+        lastQueued = worker.submit(() -> {
+            try{
+                System.out.println(job.apply(loading.join()));
+            }
+            catch(RuntimeException | Error e){
+                System.out.println("Unsuccessful queued command. " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Wait for the queued jobs and close the spell checker,
+     * if it is loaded. The loading itself is not waited for.
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker#close
+     */
+    void close(){
+        if (lastQueued != null && !lastQueued.isDone()){
+            System.out.println("Waiting for the queued commands.");
+            get();
+        }
+        if (loading.isDone() && !loading.isCompletedExceptionally()){
+            loading.join().close();
+        }
+    }
+
+    /**
+     * Wait for the loading, printing its progress.
+     * @return the loaded spell checker
+     * @throws Error if the loading failed
+     */
+    private SpellChecker await(){
+        while (true){
+            try{
+                return loading.get(progressInterval, TimeUnit.SECONDS);
+            }
+            catch(TimeoutException e){
+                System.out.println(getProgress());
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new Error("Interrupted waiting for the lexicon.", e);
+            }
+            catch(ExecutionException e){
+                if (e.getCause() instanceof Error error){
+                    throw error;
+                }
+                throw new Error("Unsuccessful loading of the lexicon.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Describe the progress of the loading: the time since the start
+     * and the finished startup phases.
+     * @return the description
+     */
+    private String getProgress(){
+        List<String> phases = Metrics.getPhases();
+        return String.format("Loading the lexicon (%.0f s), finished: %s.",
+            (System.nanoTime() - start) / 1e9, phases.isEmpty() ? "nothing yet" : String.join(", ", phases));
+    }
+}
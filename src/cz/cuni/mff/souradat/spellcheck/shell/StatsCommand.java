@@ -0,0 +1,48 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+
+class StatsCommand implements ICommand {
+    private static final String name = "stats";
+    private static final String help = "Print the statistics of the lookups, suggestions, checking speed and startup, `stats reset` resets them.";
+    private static final String usage = "stats";
+
+    private final SpellCheckerLoader loader;
+
+    public StatsCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getUsage() {
+        return usage;
+    }
+
+    @Override
+    /**Executes the stats command.
+     * Without parameters prints the statistics,
+     * with the parameter `reset` resets the counters and histograms.
+     * @return the statistics or message about success of resetting
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker#getStats
+     */
+    public String execute(String... params) {
+        if (params.length == 0){
+            return loader.get().getStats().stripTrailing();
+        }
+        if (params.length == 1 && params[0].equals("reset")){
+            Metrics.reset();
+            return "The statistics were reset.";
+        }
+        return "Unsuccessful. Expected no parameter or `reset`.\n Example usage of this command is: " + getUsage();
+    }
+
+    @Override
+    public String getHelpText() {
+        return help;
+    }
+}
@@ -0,0 +1,53 @@
+package cz.cuni.mff.souradat.spellcheck.shell;
+
+import cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker;
+
+class SuggesterCommand implements ICommand {
+    private static final String name = "suggester";
+    private static final String help = "Show or choose the engine finding the suggestions (" + String.join(", ", SpellChecker.suggesterNames) + ").";
+    private static final String usage = "suggester automaton";
+
+    private final SpellCheckerLoader loader;
+
+    public SuggesterCommand(SpellCheckerLoader loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getUsage() {
+        return usage;
+    }
+
+    @Override
+    /**Executes the suggester command.
+     * Without parameters prints the current engine,
+     * with one parameter chooses the engine.
+     * @return the name of the current engine or message about success of choosing the engine
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.SpellChecker
+     */
+    public String execute(String... params) {
+        if (params.length == 0){
+            return loader.get().getSuggesterName();
+        }
+        if (params.length != 1){
+            return "Unsuccessful. Expected at most one parameter.\n Example usage of this command is: " + getUsage();
+        }
+        try{
+            loader.get().setSuggester(params[0]);
+        }
+        catch(IllegalArgumentException e){
+            return "Unsuccessful. " + e.getMessage();
+        }
+        return String.format("The suggestions are now found by the engine %s.", params[0]);
+    }
+
+    @Override
+    public String getHelpText() {
+        return help;
+    }
+}
@@ -0,0 +1,202 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Numbers of the occurrences of the words in a corpus, used to prefer
+ * the common words among the suggestions with the same distance.
+ * The words are compared case-insensitively.
+ *
+ * The table is stored in a few primitive arrays, without an object per word:
+ * the characters of all the words one after another, the offsets
+ * of the words, their counts and an open addressing table of the word ids.
+ */
+public class FrequencyTable {
+    private char[] chars = new char[1 << 12];
+    /** Start of the i-th word in `chars`, the i+1-th item is its end.*/
+    private int[] offsets = new int[1 << 10];
+    private int[] counts = new int[1 << 10];
+    private int size;
+    /** Open addressing table of the word ids increased by one, 0 means empty slot.*/
+    private int[] slots = new int[1 << 11];
+    /** Lowercased characters of the looked up word.*/
+    private char[] lowered = new char[64];
+
+    /**
+     * Create an empty table, every word has the frequency 0.
+     */
+    public FrequencyTable(){
+    }
+
+    /**
+     * Count the words of the given file.
+     * @param path: the corpus, in UTF-8
+     * @return the table of the counts
+     * @throws IOException if the file cannot be read
+     */
+    public static FrequencyTable fromFile(Path path) throws IOException{
+        try(Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)){
+            return fromText(in);
+        }
+    }
+
+    /**
+     * Count the words of the given text, the words are split
+     * the same way as the checked texts.
+     * @param in: the text
+     * @return the table of the counts
+     * @throws IOException if the text cannot be read
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.Tokenizer
+     */
+    public static FrequencyTable fromText(Reader in) throws IOException{
+        FrequencyTable table = new FrequencyTable();
+        Tokenizer words = new Tokenizer(in);
+        while (words.next()){
+            table.add(words.getBuffer(), words.getOffset(), words.getLength());
+        }
+        return table;
+    }
+
+    /**
+     * Get the number of the occurrences of the given word in the corpus.
+     * Safe to be called concurrently, once the table is built.
+     * @param word: the word
+     * @return the number of the occurrences, 0 for the unknown words
+     */
+    public int get(CharSequence word){
+        int length = word.length();
+        int hash = 1;
+        for (int i = 0; i < length; i++){
+            hash = 31 * hash + Character.toLowerCase(word.charAt(i));
+        }
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask){
+            int id = slots[slot] - 1;
+            if (equalsIgnoreCase(id, word)){
+                return counts[id];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the number of the distinct words.
+     * @return the number of the words
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Get a fingerprint of the words and their counts, which changes
+     * whenever the corpus changes (with a high probability).
+     * @return the fingerprint
+     */
+    public long getFingerprint(){
+        long h = 0xcbf29ce484222325L;
+        for (int id = 0; id < size; id++){
+            for (int i = offsets[id]; i < offsets[id + 1]; i++){
+                h = (h ^ chars[i]) * 0x100000001b3L;
+            }
+            h = (h ^ (0x10000L + counts[id])) * 0x100000001b3L;
+        }
+        return h ^ size;
+    }
+
+    /**
+     * Count one occurrence of the word given by a slice of a char array.
+     * @param buffer: the array containing the word
+     * @param offset: the position of the first character of the word
+     * @param length: the length of the word
+     */
+    private void add(char[] buffer, int offset, int length){
+        if (lowered.length < length){
+            lowered = new char[Math.max(length, lowered.length * 2)];
+        }
+        int hash = 1;
+        for (int i = 0; i < length; i++){
+            lowered[i] = Character.toLowerCase(buffer[offset + i]);
+            hash = 31 * hash + lowered[i];
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0){
+            int id = slots[slot] - 1;
+            int start = offsets[id];
+            if (offsets[id + 1] - start == length && Arrays.equals(chars, start, start + length, lowered, 0, length)){
+                counts[id]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // a new word
+        if (size + 2 > offsets.length){
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        int start = offsets[size];
+        if (start + length > chars.length){
+            chars = Arrays.copyOf(chars, Math.max(start + length, chars.length * 2));
+        }
+        System.arraycopy(lowered, 0, chars, start, length);
+        offsets[size + 1] = start + length;
+        counts[size] = 1;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length){
+            rehash();
+        }
+    }
+
+    /**
+     * Double the table of the word ids.
+     */
+    private void rehash(){
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++){
+            int hash = 1;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++){
+                hash = 31 * hash + chars[i];
+            }
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Check, whether the word with the given id is the lowercased given word.
+     * @param id: the id of the stored word
+     * @param word: the word
+     * @return true if they are equal ignoring the case, false otherwise
+     */
+    private boolean equalsIgnoreCase(int id, CharSequence word){
+        int start = offsets[id];
+        if (offsets[id + 1] - start != word.length()){
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++){
+            if (chars[start + i] != Character.toLowerCase(word.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spread the bits of a hash, so that the low bits depend on all of them.
+     * @param hash: the hash
+     * @return the mixed hash
+     */
+    private static int mix(int hash){
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
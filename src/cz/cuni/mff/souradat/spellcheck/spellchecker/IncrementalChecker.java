@@ -0,0 +1,246 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cz.cuni.mff.souradat.spellcheck.metrics.Counter;
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+
+/**
+ * Incremental checking of a file, which checks only the rows
+ * changed since the previous checking of the same file.
+ *
+ * The rows (ending with '\n', as they are counted by the Tokenizer) are
+ * independent: no word crosses them and the report of a row depends only
+ * on its content. For every checked file a cache file stores the hashes
+ * of its rows together with their reports (without the row numbers).
+ * The rows whose hash is in the cache are reported from the cache, wherever
+ * they moved in the file, all the other rows are checked at once, as one
+ * text, and the report is put together in the order of the rows,
+ * so it is the same as the report of the whole file.
+ *
+ * The cache file holds the fingerprint of the lexicon and the variant
+ * of the checking (e.g. the distance of the suggestions), if any of them
+ * differs, the cache is not used and the whole file is checked.
+ * The format of the cache file: magic number (int), version (int),
+ * fingerprint (long), variant, checked file (UTF strings), number of the rows
+ * (int) and for every distinct row its hash (long), the number of its
+ * report lines (int) and the lines (UTF strings).
+ */
+class IncrementalChecker {
+    /** Magic number at the beginning of the cache file, "SPRC".*/
+    private static final int magic = 0x53505243;
+    /** Version of the cache file format, increase on every incompatible change.*/
+    private static final int version = 1;
+    private static final String[] noReport = new String[0];
+
+    private static final Counter reusedRows = Metrics.counter("recheck reused rows");
+    private static final Counter checkedRows = Metrics.counter("recheck checked rows");
+
+    /**
+     * Check the file incrementally.
+     * @param file: the file to be checked
+     * @param charset: the charset of the file
+     * @param cacheFile: the cache file of the checked file and the variant
+     * @param variant: the description of the checking, the cache is used
+     * only for the same variant
+     * @param fingerprint: the fingerprint of the lexicon, not 0
+     * @param checker: the checking of a text, its report lines have to start
+     * with the row number and ':'
+     * @param out: the writer where the report is written
+     * @return the number of the checked words (in the changed rows)
+     * @throws IOException if the file cannot be read or the report written
+     */
+    static long check(Path file, Charset charset, Path cacheFile, String variant, long fingerprint,
+        ParallelFileChecker.ChunkChecker checker, Writer out) throws IOException{
+        List<String> rows = readRows(file, charset);
+        Map<Long, String[]> cached = load(cacheFile, file, variant, fingerprint);
+
+        // the distinct rows missing in the cache
+        long[] hashes = new long[rows.size()];
+        Map<Long, String[]> reports = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++){
+            long hash = hash(rows.get(i));
+            hashes[i] = hash;
+            if (reports.containsKey(hash)){
+                continue;
+            }
+            String[] report = cached.get(hash);
+            reports.put(hash, report);
+            if (report == null){
+                // the i-th missing row is the row i of the text
+                text.append(rows.get(i)).append('\n');
+                missing.add(hash);
+            }
+        }
+        reusedRows.add(rows.size() - missing.size());
+        checkedRows.add(missing.size());
+
+        long words = 0;
+        if (!missing.isEmpty()){
+            StringWriter report = new StringWriter();
+            words = checker.check(new Tokenizer(new StringReader(text.toString()), 0, WordCharacters.getDefault()), report);
+            List<List<String>> lines = new ArrayList<>(missing.size());
+            for (int i = 0; i < missing.size(); i++){
+                lines.add(new ArrayList<>());
+            }
+            for (String line: report.toString().split("\n")){
+                int colon = line.indexOf(':');
+                if (colon > 0){
+                    lines.get(Integer.parseInt(line.substring(0, colon))).add(line.substring(colon));
+                }
+            }
+            for (int i = 0; i < missing.size(); i++){
+                reports.put(missing.get(i), lines.get(i).isEmpty() ? noReport : lines.get(i).toArray(noReport));
+            }
+        }
+
+        for (int i = 0; i < hashes.length; i++){
+            for (String line: reports.get(hashes[i])){
+                out.write(Integer.toString(i + 1));
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        save(cacheFile, file, variant, fingerprint, reports);
+        return words;
+    }
+
+    /**
+     * Read the rows of the file, split at '\n' only.
+     * @param file: the file
+     * @param charset: the charset of the file
+     * @return the rows without the '\n', the last one is empty
+     * if the file ends with '\n'
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> readRows(Path file, Charset charset) throws IOException{
+        List<String> rows = new ArrayList<>();
+        StringBuilder row = new StringBuilder();
+        char[] buffer = new char[1 << 16];
+        try(Reader in = new InputStreamReader(Files.newInputStream(file), charset)){
+            int read;
+            while ((read = in.read(buffer)) >= 0){
+                int start = 0;
+                for (int i = 0; i < read; i++){
+                    if (buffer[i] == '\n'){
+                        row.append(buffer, start, i - start);
+                        rows.add(row.toString());
+                        row.setLength(0);
+                        start = i + 1;
+                    }
+                }
+                row.append(buffer, start, read - start);
+            }
+        }
+        rows.add(row.toString());
+        return rows;
+    }
+
+    /**
+     * Compute the 64-bit hash of a row (FNV-1a with a final mixing).
+     * @param row: the row
+     * @return the hash
+     */
+    private static long hash(String row){
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < row.length(); i++){
+            h ^= row.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= row.length();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Load the reports of the rows from the cache file, if it was stored
+     * for the same file, variant and lexicon.
+     * @param cacheFile: the cache file
+     * @param file: the checked file
+     * @param variant: the variant of the checking
+     * @param fingerprint: the fingerprint of the lexicon
+     * @return the reports of the rows by their hashes, empty if the cache
+     * does not exist, cannot be read or does not match
+     */
+    private static Map<Long, String[]> load(Path cacheFile, Path file, String variant, long fingerprint){
+        Map<Long, String[]> reports = new HashMap<>();
+        if (!Files.isRegularFile(cacheFile)){
+            return reports;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))){
+            if (in.readInt() != magic || in.readInt() != version || in.readLong() != fingerprint
+                || !in.readUTF().equals(variant) || !in.readUTF().equals(file.toAbsolutePath().toString())){
+                return reports;
+            }
+            int rows = in.readInt();
+            for (int i = 0; i < rows; i++){
+                long hash = in.readLong();
+                String[] report = new String[in.readInt()];
+                for (int j = 0; j < report.length; j++){
+                    report[j] = in.readUTF();
+                }
+                reports.put(hash, report.length == 0 ? noReport : report);
+            }
+            return reports;
+        }
+        catch(IOException e){
+            // damaged cache, check the whole file
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Store the reports of the rows of the file to the cache file,
+     * replacing the old content atomically.
+     * If the cache cannot be written, the next checking is not incremental.
+     * @param cacheFile: the cache file
+     * @param file: the checked file
+     * @param variant: the variant of the checking
+     * @param fingerprint: the fingerprint of the lexicon
+     * @param reports: the reports of the rows by their hashes
+     */
+    private static void save(Path cacheFile, Path file, String variant, long fingerprint, Map<Long, String[]> reports){
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try{
+            Files.createDirectories(cacheFile.getParent());
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+                out.writeInt(magic);
+                out.writeInt(version);
+                out.writeLong(fingerprint);
+                out.writeUTF(variant);
+                out.writeUTF(file.toAbsolutePath().toString());
+                out.writeInt(reports.size());
+                for (Map.Entry<Long, String[]> entry: reports.entrySet()){
+                    out.writeLong(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (String line: entry.getValue()){
+                        out.writeUTF(line);
+                    }
+                }
+            }
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e){
+            try{
+                Files.deleteIfExists(temporary);
+            }
+            catch(IOException ignored){
+                // nothing more can be done
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parallel checking of a file.
+ * The file is memory-mapped and split into chunks that end with a line end,
+ * so every chunk can be decoded and split into words independently
+ * and no word crosses the chunks. The row numbers of the first rows
+ * of the chunks are computed first (counting the line ends in parallel),
+ * then the chunks are checked on the common fork-join pool and their
+ * reports are written in the order of the chunks, so the output is the same
+ * as when the file is checked sequentially.
+ * Only a window of `chunksInFlight` chunks per thread is checked at once:
+ * the next chunk is submitted after the report of the oldest one is written,
+ * so the memory of the reports does not grow with the size of the file.
+ */
+class ParallelFileChecker {
+    private static final int minChunkSize = 1 << 20;
+    private static final int maxChunkSize = 1 << 24;
+    /** Number of chunks per thread of the pool, for balancing.*/
+    private static final int chunksPerThread = 8;
+    /** Number of the chunks per thread being checked or waiting to be written at once.*/
+    private static final int chunksInFlight = 2;
+
+    /**
+     * Checking of the words of one chunk.
+     */
+    interface ChunkChecker {
+        /**
+         * Check the words of the chunk and report the results to the writer.
+         * @param words: the tokenizer of the chunk
+         * @param out: the writer of the report of the chunk
+         * @return the number of the checked words
+         * @throws IOException if the writing fails
+         */
+        long check(Tokenizer words, Writer out) throws IOException;
+    }
+
+    /**
+     * Report of one checked chunk.
+     * @param text: the report
+     * @param words: the number of the checked words of the chunk
+     */
+    private record ChunkReport(String text, long words){
+    }
+
+    /**
+     * Check the given file in parallel.
+     * Files in charsets where a line end is not the single byte '\n'
+     * (e.g. UTF-16) cannot be split, they are checked sequentially.
+     * @param file: the file to be checked
+     * @param charset: the charset of the file
+     * @param checker: the checking of one chunk
+     * @param out: the writer where the reports of the chunks are written in order
+     * @return the number of the checked words
+     * @throws IOException if the file cannot be read or the report written
+     */
+    static long check(Path file, Charset charset, ChunkChecker checker, Writer out) throws IOException{
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            if (!isLineSplittable(charset)){
+                BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), charset));
+                return checker.check(new Tokenizer(in), out);
+            }
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            long[] bounds = split(channel, chunkSize(channel.size(), pool.getParallelism()));
+            int chunks = bounds.length - 1;
+
+            List<Future<Integer>> lineCounts = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++){
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                lineCounts.add(pool.submit(() -> countLines(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start))));
+            }
+            int[] firstRows = new int[chunks];
+            int row = 1;
+            for (int i = 0; i < chunks; i++){
+                firstRows[i] = row;
+                row += getResult(lineCounts.get(i));
+            }
+
+            int window = chunksInFlight * pool.getParallelism();
+            Deque<Future<ChunkReport>> reports = new ArrayDeque<>(window);
+            long checked = 0;
+            try{
+                int submitted = 0;
+                while (submitted < chunks || !reports.isEmpty()){
+                    while (submitted < chunks && reports.size() < window){
+                        long start = bounds[submitted];
+                        long end = bounds[submitted + 1];
+                        int firstRow = firstRows[submitted++];
+                        reports.add(pool.submit(() -> checkChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), charset, firstRow, checker)));
+                    }
+                    // the report is dropped as soon as it is written
+                    ChunkReport result = getResult(reports.poll());
+                    out.write(result.text());
+                    checked += result.words();
+                }
+            }
+            finally{
+                for (Future<ChunkReport> report: reports){
+                    report.cancel(false);
+                }
+            }
+            return checked;
+        }
+    }
+
+    /**
+     * Check, whether a file in the given charset can be split at the bytes '\n'.
+     * @param charset: the charset
+     * @return true for UTF-8 and the single-byte charsets encoding '\n' as itself
+     */
+    static boolean isLineSplittable(Charset charset){
+        if (charset.equals(StandardCharsets.UTF_8)){
+            return true;
+        }
+        return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1
+            && Arrays.equals("\n".getBytes(charset), new byte[]{'\n'});
+    }
+
+    /**
+     * Choose the size of the chunks for a file.
+     * @param size: the size of the file in bytes
+     * @param parallelism: the number of threads
+     * @return the size of the chunks in bytes
+     */
+    private static int chunkSize(long size, int parallelism){
+        long perChunk = size / ((long) parallelism * chunksPerThread);
+        return (int) Math.max(minChunkSize, Math.min(maxChunkSize, perChunk));
+    }
+
+    /**
+     * Split the file into chunks of approximately the given size,
+     * every chunk except the last one ends just after a '\n'.
+     * @param channel: the channel of the file
+     * @param chunkSize: the approximate size of the chunks
+     * @return the bounds of the chunks, the chunk i is from bounds[i] to bounds[i+1]
+     * @throws IOException if the file cannot be read or a line is too long
+     */
+    private static long[] split(FileChannel channel, int chunkSize) throws IOException{
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long start = 0;
+        while (start < size){
+            long end = start + chunkSize;
+            if (end >= size){
+                end = size;
+            }
+            else{
+                end = findLineEnd(channel, buffer, end - 1, size);
+            }
+            if (end - start > Integer.MAX_VALUE){
+                throw new IOException("Too long line, the file cannot be split into chunks.");
+            }
+            bounds.add(end);
+            start = end;
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Find the position after the first '\n' at or after the given position.
+     * @param channel: the channel of the file
+     * @param buffer: the buffer used for reading
+     * @param from: the position where the searching starts
+     * @param size: the size of the file
+     * @return the position after the found '\n' or the size of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long findLineEnd(FileChannel channel, ByteBuffer buffer, long from, long size) throws IOException{
+        long position = from;
+        while (position < size){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0){
+                break;
+            }
+            for (int i = 0; i < read; i++){
+                if (buffer.get(i) == '\n'){
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Count the line ends in the given chunk.
+     * @param chunk: the bytes of the chunk
+     * @return the number of the bytes '\n'
+     */
+    private static int countLines(MappedByteBuffer chunk){
+        int lines = 0;
+        int limit = chunk.limit();
+        for (int i = 0; i < limit; i++){
+            if (chunk.get(i) == '\n'){
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Decode and check one chunk.
+     * Malformed input is replaced the same way as by the readers.
+     * @param chunk: the bytes of the chunk
+     * @param charset: the charset of the file
+     * @param firstRow: the row number of the first row of the chunk
+     * @param checker: the checking of the chunk
+     * @return the report of the chunk
+     * @throws IOException if the chunk cannot be decoded
+     */
+    private static ChunkReport checkChunk(MappedByteBuffer chunk, Charset charset, int firstRow, ChunkChecker checker) throws IOException{
+        CharBuffer text = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(chunk);
+        Reader in = new CharArrayReader(text.array(), text.arrayOffset() + text.position(), text.remaining());
+        StringWriter report = new StringWriter();
+        long words = checker.check(new Tokenizer(in, firstRow, WordCharacters.getDefault()), report);
+        return new ChunkReport(report.toString(), words);
+    }
+
+    /**
+     * Wait for the result of a task, rethrowing its exception.
+     * @param <T>: type of the result
+     * @param task: the task
+     * @return the result of the task
+     * @throws IOException if the task failed or the waiting was interrupted
+     */
+    private static <T> T getResult(Future<T> task) throws IOException{
+        try{
+            return task.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking the file.");
+        }
+        catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -1,32 +1,334 @@
 package cz.cuni.mff.souradat.spellcheck.spellchecker;
 
 import java.io.*;
-import java.util.Iterator;
-import java.util.function.Predicate;
-import java.util.stream.Stream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import cz.cuni.mff.souradat.spellcheck.lexicon.AlternatorSuggester;
+import cz.cuni.mff.souradat.spellcheck.lexicon.DawgLexicon;
+import cz.cuni.mff.souradat.spellcheck.lexicon.DeletionIndexLexicon;
 import cz.cuni.mff.souradat.spellcheck.lexicon.ILexicon;
-import cz.cuni.mff.souradat.spellcheck.lexicon.Levenshtein;
+import cz.cuni.mff.souradat.spellcheck.lexicon.ISuggester;
+import cz.cuni.mff.souradat.spellcheck.lexicon.LevenshteinAutomatonSearch;
+import cz.cuni.mff.souradat.spellcheck.lexicon.LevenshteinSearch;
+import cz.cuni.mff.souradat.spellcheck.lexicon.ShardedLexicon;
+import cz.cuni.mff.souradat.spellcheck.lexicon.Suggestion;
 import cz.cuni.mff.souradat.spellcheck.lexicon.TrieLexicon;
 import cz.cuni.mff.souradat.spellcheck.lexicon.WordAlternator;
+import cz.cuni.mff.souradat.spellcheck.metrics.Counter;
+import cz.cuni.mff.souradat.spellcheck.metrics.Histogram;
+import cz.cuni.mff.souradat.spellcheck.metrics.Metrics;
+import cz.cuni.mff.souradat.spellcheck.metrics.Rate;
 
 /**
  * The Spelling checker, providing the API for external usage.
  */
 public class SpellChecker {
+    /** System property choosing the lexicon implementation: `trie` (default), `dawg`, `index` or `sharded`.*/
+    public static final String lexiconProperty = "spellcheck.lexicon";
+
+    /** System property choosing the suggestion engine, one of `suggesterNames`.*/
+    public static final String suggesterProperty = "spellcheck.suggester";
+    /** Names of the available suggestion engines:
+     * `walk` walks the lexicon automata with Levenshtein rows (default),
+     * `automaton` intersects them with a Levenshtein automaton,
+     * `alternator` generates the alternations allowed by the lexicon automata (the known ones),
+     * `index` uses the deletion index of the lexicon (only with the `index` lexicon,
+     * where it is the default).
+     */
+    public static final List<String> suggesterNames = List.of("walk", "automaton", "alternator", "index");
+
+    /** System property setting the maximal number of the cached suggestions (default 10000), 0 disables the cache.*/
+    public static final String cacheSizeProperty = "spellcheck.cache.size";
+    /** System property setting the file where the suggestion cache is stored between the runs
+     * (not stored by default).*/
+    public static final String cacheFileProperty = "spellcheck.cache.file";
+
+    /** System property setting the corpus whose word frequencies rank the suggestions
+     * with the same distance (default `data/book.txt`, no ranking if it does not exist).*/
+    public static final String frequencyFileProperty = "spellcheck.frequency.file";
+
+    /** System property setting the directory of the caches of the incremental checking
+     * (default `data/recheck`).*/
+    public static final String recheckDirectoryProperty = "spellcheck.recheck.dir";
+
+    /** System property setting the file where the statistics are periodically written
+     * (not written by default).*/
+    public static final String metricsFileProperty = "spellcheck.metrics.file";
+    /** System property setting the period of writing the statistics in seconds (default 60).*/
+    public static final String metricsIntervalProperty = "spellcheck.metrics.interval";
+
+    private static final Counter lookupHits = Metrics.counter("lookup hits");
+    private static final Counter lookupMisses = Metrics.counter("lookup misses");
+    private static final Rate checkedWords = Metrics.rate("checked words");
+    private static final Histogram suggestionLatency = Metrics.histogram("suggestion latency", "µs");
+    private static final Histogram suggestionCount = Metrics.histogram("suggestions per call", "");
+    private static final Counter distinctUnknown = Metrics.counter("distinct unknown words");
+
+    /** Number of the suggestions reported for every unknown word by `correct`.*/
+    private static final int suggestionsPerWord = 7;
+
+    private static final String checkHeader = "row" + ":" + "\t" + "unknown" + "\n";
+    private static final String correctHeader = "row" + "\t" + "unknown" + "\t" + "->" + "\t" + "alternations (distance)" + "\n";
+    private static final String groupedHeader = "unknown" + "\t" + "count" + "\t" + "rows" + "\t" + "->" + "\t" + "alternations (distance)" + "\n";
+
     ILexicon lexicon;
+    private ISuggester suggester;
+    private String suggesterName;
+    private SuggestionCache cache;
+    private Path cacheFile;
+    private Path metricsFile;
+    private ScheduledExecutorService metricsWriter;
+    private final FrequencyTable frequencies;
+    /** Order of the suggestions: by the distance, the more frequent first, then alphabetically.*/
+    private final Comparator<Ranked> ranking = Comparator.comparingInt((Ranked r) -> r.suggestion().distance())
+        .thenComparing(Comparator.comparingInt(Ranked::frequency).reversed())
+        .thenComparing(r -> r.suggestion().form());
+
+    /**
+     * Suggestion with the frequency of its form.
+     * @param suggestion: the suggestion
+     * @param frequency: the number of the occurrences of the form in the corpus
+     */
+    private record Ranked(Suggestion suggestion, int frequency){
+    }
+
     public SpellChecker(){
+        this(loadLexicon());
+    }
+
+    /**
+     * Create a SpellChecker using the given lexicon.
+     * @param lexicon: the lexicon of known forms.
+     */
+    public SpellChecker(ILexicon lexicon){
+        this.lexicon = lexicon;
+        // fail early on a wrong setting of the word characters
+        WordCharacters.getDefault();
+        int cacheSize = Integer.getInteger(cacheSizeProperty, 10000);
+        if (cacheSize > 0){
+            cache = new SuggestionCache(cacheSize);
+        }
+        setSuggester(System.getProperty(suggesterProperty, lexicon instanceof ISuggester ? "index" : "walk"));
+        frequencies = loadFrequencies(Path.of(System.getProperty(frequencyFileProperty, "data/book.txt")));
+        String cacheFilename = System.getProperty(cacheFileProperty);
+        if (cache != null && cacheFilename != null){
+            cacheFile = Path.of(cacheFilename);
+            loadCache();
+        }
+        String metricsFilename = System.getProperty(metricsFileProperty);
+        if (metricsFilename != null){
+            metricsFile = Path.of(metricsFilename);
+            startWritingStats(Integer.getInteger(metricsIntervalProperty, 60));
+        }
+    }
+
+    /**
+     * Load the lexicon chosen by the property `lexiconProperty`.
+     * @return the loaded lexicon
+     */
+    private static ILexicon loadLexicon(){
         System.out.println("Loading the lexicon. Based on its size it could take several minutes. Please, wait.");
-        lexicon = new TrieLexicon();
+        return createLexicon(System.getProperty(lexiconProperty, "trie"));
+    }
+
+    /**
+     * Create the lexicon of the given kind.
+     * @param kind: `trie` for the modifiable TrieLexicon,
+     * `dawg` for the smaller read-only DawgLexicon,
+     * `index` for the TrieLexicon with the DeletionIndexLexicon for fast suggestions,
+     * `sharded` for the read-only ShardedLexicon mapped by parts
+     * @return the loaded lexicon
+     */
+    private static ILexicon createLexicon(String kind){
+        switch(kind){
+            case "trie":
+                return new TrieLexicon();
+            case "dawg":
+                return new DawgLexicon();
+            case "index":
+                return new DeletionIndexLexicon();
+            case "sharded":
+                return new ShardedLexicon();
+            default:
+                throw new Error(String.format("Unknown lexicon kind %s (the property %s should be `trie`, `dawg`, `index` or `sharded`).", kind, lexiconProperty));
+        }
+    }
+
+    /**
+     * Choose the engine used for finding the suggestions.
+     * @param name: name of the engine, one of `suggesterNames`
+     * @throws IllegalArgumentException if there is no engine with the given name
+     * or the engine is not available for the lexicon
+     */
+    public void setSuggester(String name){
+        switch(name){
+            case "walk":
+                suggester = new LevenshteinSearch();
+                break;
+            case "automaton":
+                suggester = new LevenshteinAutomatonSearch();
+                break;
+            case "alternator":
+                suggester = new AlternatorSuggester();
+                break;
+            case "index":
+                if (!(lexicon instanceof ISuggester)){
+                    throw new IllegalArgumentException("The suggestion engine index needs the index lexicon.");
+                }
+                suggester = (ISuggester) lexicon;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown suggestion engine %s, expected one of %s.", name, suggesterNames));
+        }
+        suggesterName = name;
+        if (cache != null){
+            // the engines may order the suggestions of the same distance differently
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get the name of the engine used for finding the suggestions.
+     * @return name of the engine
+     */
+    public String getSuggesterName(){
+        return suggesterName;
     }
 
     /**
      * Add the given form to the set of known forms.
      * @param s: the word form to be added.
      * @return true if the form was not known before, false otherwise
+     * @throws UnsupportedOperationException if the lexicon is read-only
+     * @throws IllegalArgumentException if the form contains a line end
+     * @throws java.io.UncheckedIOException if the form cannot be stored
      */
     public boolean addForm(String s){
-        return lexicon.addForm(s);
+        boolean added = lexicon.addForm(s);
+        if (added && cache != null){
+            cache.invalidate(s);
+        }
+        return added;
+    }
+
+    /**
+     * Get the cache of the suggestions.
+     * @return the cache, or null if the suggestions are not cached
+     */
+    public SuggestionCache getSuggestionCache(){
+        return cache;
+    }
+
+    /**
+     * Get the statistics of the spell checker: the lexicon lookups,
+     * the checked words per second, the latency and size of the suggestions,
+     * the suggestion cache and the durations of the startup phases.
+     * @return the statistics, one value per line
+     * @see cz.cuni.mff.souradat.spellcheck.metrics.Metrics
+     */
+    public String getStats(){
+        String stats = Metrics.report();
+        if (cache != null){
+            stats += String.format("suggestion cache: %d words, hits %d, misses %d%n",
+                cache.size(), cache.getHitCount(), cache.getMissCount());
+        }
+        return stats;
+    }
+
+    /**
+     * Close the lexicon (which stores the added forms), store the suggestion
+     * cache to the file given by the property `cacheFileProperty`
+     * and the statistics to the file given by the property
+     * `metricsFileProperty`, if they are set.
+     * @return true if everything was stored or there is nothing to store,
+     * false if the storing failed
+     */
+    public boolean close(){
+        lexicon.close();
+        boolean stored = true;
+        if (metricsWriter != null){
+            metricsWriter.shutdownNow();
+            stored = writeStats();
+        }
+        long fingerprint = lexicon.getFingerprint();
+        if (cacheFile == null || fingerprint == 0){
+            return stored;
+        }
+        try{
+            cache.save(cacheFile, fingerprint, suggesterName);
+            return stored;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Start writing the statistics periodically to the file `metricsFile`
+     * on a background (daemon) thread.
+     * @param interval: the period in seconds
+     */
+    private void startWritingStats(int interval){
+        metricsWriter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int period = Math.max(1, interval);
+        metricsWriter.scheduleAtFixedRate(this::writeStats, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write the statistics to the file `metricsFile`, replacing its content atomically.
+     * @return true if the statistics were written, false otherwise
+     */
+    private boolean writeStats(){
+        Path temporary = metricsFile.resolveSibling(metricsFile.getFileName() + ".tmp");
+        try{
+            Files.writeString(temporary, getStats());
+            Files.move(temporary, metricsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Load the suggestion cache stored by the previous run,
+     * if it was stored for the same lexicon and suggestion engine.
+     */
+    private void loadCache(){
+        long fingerprint = lexicon.getFingerprint();
+        if (fingerprint == 0){
+            return;
+        }
+        try{
+            long start = System.nanoTime();
+            cache.load(cacheFile, fingerprint, suggesterName);
+            Metrics.recordPhase("cache load", System.nanoTime() - start);
+        }
+        catch(IOException e){
+            // damaged cache file, start with an empty cache
+            cache.clear();
+        }
     }
 
     /**
@@ -35,20 +337,112 @@ public class SpellChecker {
      * @return true if the word form is known, false otherwise
      */
     public boolean contains(String s){
-        return lexicon.contains(s);
+        boolean known = lexicon.contains(s);
+        (known ? lookupHits : lookupMisses).increment();
+        return known;
     }
 
     /**
-     * Get all words with Levenshtein distance at most 2 from the given word,
-     * using the default Czech alphabet.
+     * Get all known words with Levenshtein distance at most 2 from the given word.
      * @param form: the word to be alternated
-     * @return finite stream of unique alternations with distance at most 2.
+     * @return finite iterable of unique alternations with distance at most 2,
+     * ordered by increasing distance.
      */  
     public Iterable<String> alter(String form){
-        return WordAlternator.stream2iterable(
-            WordAlternator.alternated(form, 2).
-            filter(w -> lexicon.contains(w))
-            );
+        return alter(form, 2);
+    }
+
+    /**
+     * Get all known words with Levenshtein distance at most `upToDistance` from the given word.
+     * @param form: the word to be alternated
+     * @param upToDistance: the maximal Levenshtein distance of the alternations
+     * @return finite iterable of unique alternations,
+     * ordered by increasing distance.
+     */
+    public Iterable<String> alter(String form, int upToDistance){
+        return suggest(form, upToDistance, Integer.MAX_VALUE).stream().map(Suggestion::form)::iterator;
+    }
+
+    /**
+     * Get the `count` best known words with Levenshtein distance at most
+     * `upToDistance` from the given word: the closest ones, among the equally
+     * close ones the more frequent ones in the corpus, then alphabetically.
+     * The search is deepened one distance at a time: the suggestions
+     * with distance 1 are searched first and the farther ones only if fewer
+     * than `count` were found, as the closer suggestions are always better.
+     * The best suggestions are cached.
+     * @param form: the word to be alternated
+     * @param upToDistance: the maximal Levenshtein distance of the suggestions
+     * @param count: the maximal number of the suggestions, `Integer.MAX_VALUE` for all of them
+     * @return the best suggestions, the best first
+     */
+    public List<Suggestion> suggest(String form, int upToDistance, int count){
+        if (count <= 0){
+            return List.of();
+        }
+        if (cache != null){
+            return cache.get(form, upToDistance, count, () -> findBest(form, upToDistance, count));
+        }
+        return findBest(form, upToDistance, count);
+    }
+
+    /**
+     * Find the best suggestions by the chosen engine, deepening the search
+     * while fewer than `count` suggestions are found, and record
+     * their latency and number.
+     * @param form: the word to be alternated
+     * @param upToDistance: the maximal Levenshtein distance of the suggestions
+     * @param count: the maximal number of the suggestions
+     * @return the best suggestions, the best first
+     */
+    private List<Suggestion> findBest(String form, int upToDistance, int count){
+        long start = System.nanoTime();
+        // the worst of the kept suggestions on the top
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(ranking.reversed());
+        // all the suggestions are searched at once if they all are kept
+        int first = count == Integer.MAX_VALUE ? upToDistance : Math.min(1, upToDistance);
+        for (int distance = first; distance <= upToDistance && heap.size() < count; distance++){
+            // the closer suggestions were found by the previous searches
+            int closest = distance == first ? 0 : distance;
+            for (Suggestion suggestion: WordAlternator.stream2iterable(suggester.suggest(lexicon, form, distance))){
+                if (suggestion.distance() < closest){
+                    continue;
+                }
+                heap.add(new Ranked(suggestion, frequencies.get(suggestion.form())));
+                if (heap.size() > count){
+                    heap.poll();
+                }
+            }
+        }
+        List<Suggestion> best = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()){
+            best.add(heap.poll().suggestion());
+        }
+        Collections.reverse(best);
+        suggestionLatency.record((System.nanoTime() - start) / 1000);
+        suggestionCount.record(best.size());
+        return best;
+    }
+
+    /**
+     * Count the words of the corpus ranking the suggestions.
+     * @param corpus: the corpus file
+     * @return the frequencies of the words, empty if the corpus does not exist
+     */
+    private static FrequencyTable loadFrequencies(Path corpus){
+        if (!Files.isRegularFile(corpus)){
+            return new FrequencyTable();
+        }
+        try{
+            long start = System.nanoTime();
+            FrequencyTable table = FrequencyTable.fromFile(corpus);
+            Metrics.recordPhase("frequency table", System.nanoTime() - start);
+            return table;
+        }
+        catch(IOException e){
+            // damaged or not UTF-8 corpus, the suggestions are not ranked by frequency
+            return new FrequencyTable();
+        }
     }
 
     /**
@@ -62,13 +456,10 @@ public class SpellChecker {
      */
     public boolean check(BufferedReader in, BufferedWriter out){
         try{
-            Iterable<WordWithRowNum> allWords =  new Stream2WordsRowsNums(in);
-            Iterable<WordWithRowNum> incorrectWords = filterIterable(allWords, word -> !lexicon.contains(word.word));
-            out.write("row" + ":" + "\t" + "unknown" + "\n");
-            for (WordWithRowNum word: incorrectWords){
-                String incorrect = word.word;
-                out.write(word.rowNum + ":" + "\t" + incorrect + "\n");
-            }
+            long start = System.nanoTime();
+            out.write(checkHeader);
+            long words = checkWords(new Tokenizer(in), out);
+            checkedWords.record(words, System.nanoTime() - start);
             return true;
         }
         catch(IOException e){
@@ -76,7 +467,129 @@ public class SpellChecker {
         }
     }
 
+    /**
+     * Check the given file for unknown word forms in parallel
+     * and report them to the given writer, exactly as `check` does.
+     * The file is memory-mapped and split into chunks at line boundaries,
+     * the chunks are checked on the common fork-join pool
+     * and the reports are written in the order of the chunks.
+     * @param in: the file whose content should be checked,
+     * in the default charset
+     * @param out: the writer where the unknown forms are reported.
+     * @return true if no IOException occured
+     * (and thus the checking was successful), false otherwise.
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.ParallelFileChecker
+     */
+    public boolean checkParallel(Path in, BufferedWriter out){
+        try{
+            long start = System.nanoTime();
+            out.write(checkHeader);
+            long words = ParallelFileChecker.check(in, Charset.defaultCharset(), this::checkWords, out);
+            checkedWords.record(words, System.nanoTime() - start);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
 
+    /**
+     * Check the given file for unknown word forms incrementally
+     * and report them to the given writer, exactly as `check` does.
+     * Only the rows changed since the last incremental checking of the file
+     * are checked, the reports of the other rows are taken from the cache
+     * in the directory given by the property `recheckDirectoryProperty`.
+     * The cache is not used after a change of the lexicon.
+     * @param in: the file whose content should be checked,
+     * in the default charset
+     * @param out: the writer where the unknown forms are reported.
+     * @return true if no IOException occured
+     * (and thus the checking was successful), false otherwise.
+     * @see cz.cuni.mff.souradat.spellcheck.spellchecker.IncrementalChecker
+     */
+    public boolean checkIncremental(Path in, BufferedWriter out){
+        try{
+            long start = System.nanoTime();
+            out.write(checkHeader);
+            long words = recheck(in, "check", this::checkWords, out);
+            checkedWords.record(words, System.nanoTime() - start);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Check the file incrementally with the cache of the given variant
+     * of the checking, or the whole file if the lexicon has no fingerprint.
+     * @param in: the checked file, in the default charset
+     * @param variant: the kind of the checking and its settings
+     * @param checker: the checking of a text
+     * @param out: the writer of the report
+     * @return the number of the checked words
+     * @throws IOException if the file cannot be read or the report written
+     */
+    private long recheck(Path in, String variant, ParallelFileChecker.ChunkChecker checker, Writer out) throws IOException{
+        long fingerprint = lexicon.getFingerprint();
+        if (fingerprint == 0){
+            return ParallelFileChecker.check(in, Charset.defaultCharset(), checker, out);
+        }
+        // the same text is reported differently with other word characters
+        variant += " " + System.getProperty(WordCharacters.property, "");
+        Path recheckFile = Path.of(System.getProperty(recheckDirectoryProperty, "data/recheck"),
+            recheckFileName(in.toAbsolutePath().normalize().toString(), variant));
+        return IncrementalChecker.check(in, Charset.defaultCharset(), recheckFile, variant, fingerprint, checker, out);
+    }
+
+    /**
+     * Get the name of the cache file of the incremental checking:
+     * the SHA-256 digest of the path of the checked file and the variant.
+     * @param file: the absolute normalized path of the checked file
+     * @param variant: the kind of the checking and its settings
+     * @return the name of the cache file
+     */
+    private static String recheckFileName(String file, String variant){
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(file.getBytes(StandardCharsets.UTF_8));
+            // the path cannot contain the zero character, so the pairs do not collide
+            digest.update((byte) 0);
+            digest.update(variant.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest()) + ".bin";
+        }
+        catch(NoSuchAlgorithmException e){
+            // every Java platform implements SHA-256
+            throw new Error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Report the unknown forms among the given words.
+     * @param words: the tokenizer of the checked text
+     * @param out: the writer where the unknown forms are reported.
+     * @return the number of the checked words
+     * @throws IOException if the writing fails
+     */
+    private long checkWords(Tokenizer words, Writer out) throws IOException{
+        long checked = 0;
+        long unknown = 0;
+        try{
+            while (words.next()){
+                checked++;
+                if (!lexicon.contains(words.getBuffer(), words.getOffset(), words.getLength())){
+                    unknown++;
+                    out.write(words.getRow() + ":" + "\t" + words.getWord() + "\n");
+                }
+            }
+        }
+        finally{
+            // counted once per text, so the counters are not touched per word
+            lookupHits.add(checked - unknown);
+            lookupMisses.add(unknown);
+        }
+        return checked;
+    }
 
     public boolean correct(BufferedReader in, BufferedWriter out){
         return correct(in,out,1);
@@ -89,6 +602,7 @@ public class SpellChecker {
     * and with suggested corrections.
     * The suggested corrections are known word forms that have 
     * Levenshtein distance from the unknown form at most `upToDistance`.
+    * They are found once for every distinct unknown form.
     * @param in: the reader whose content should be corrected.
     * @param out: the writer where the unknown forms and suggestions are reported.
     * @param upToDistance: the maximal Levehnstein distance of the suggestions
@@ -97,37 +611,107 @@ public class SpellChecker {
     * (and thus the correcting was successful), false otherwise.
     */
     public boolean correct(BufferedReader in, BufferedWriter out, int upToDistance){
+        return correct(in, out, upToDistance, true);
+    }
+
+    /**
+     * Correct the content of the given reader as `correct` does,
+     * finding the suggestions either in parallel on the common fork-join pool
+     * or only on the calling thread (e.g. when the number of the threads
+     * used by the caller is limited).
+     * @param in: the reader whose content should be corrected.
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * from the unknown form
+     * @param parallel: whether the suggestions are found in parallel
+     * @return true if no IOException occured
+     * (and thus the correcting was successful), false otherwise.
+     */
+    public boolean correct(BufferedReader in, BufferedWriter out, int upToDistance, boolean parallel){
         try{
-            Iterable<WordWithRowNum> allWords =  new Stream2WordsRowsNums(in);
-
-            Iterable<WordWithRowNum> incorrectWords = filterIterable(allWords, word -> !lexicon.contains(word.word));
-            
-            out.write("row" + "\t" + "unknown" + "\t" + "->" + "\t" + "alternations (distance)" + "\n");
-
-            for (WordWithRowNum word: incorrectWords){
-                String incorrect = word.word;
-                Stream<String> alternatedCorrectFormsStream = 
-                    WordAlternator.alternated(incorrect, upToDistance).
-                    filter(form -> lexicon.contains(form));
-
-                Iterable<String> alternatedCorrectForms = WordAlternator.stream2iterable(alternatedCorrectFormsStream);
-                
-                // Iterable<String> alternatedForms = WordAlternator.iterateAlternatedWords(incorrect);
-                // Iterable<String> alternatedCorrectForms = filterIterable(alternatedForms, form -> lexicon.contains(form));
-                
-                out.write(word.rowNum + ":" + "\t" + incorrect + "\t" + "->" + "\t");
-
-                int counter = 0;
-                for (String alternated: alternatedCorrectForms){
-                    out.write(alternated + " (" + Levenshtein.distance(alternated, incorrect) + ")");
-                    if (counter++ > 5) { break; }
-                    else{
-                        out.write(", ");
-                    }
-                }
+            long start = System.nanoTime();
+            out.write(correctHeader);
+            long words = correctWords(new Tokenizer(in), out, upToDistance, parallel);
+            checkedWords.record(words, System.nanoTime() - start);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
 
-                out.write("\n");
-            }
+    /**
+     * Check the content of the given reader for unknown word forms
+     * and report every distinct unknown form once, with the number
+     * of its occurrences, the rows where it occured and the suggested
+     * corrections, in the order of the first occurrences.
+     * @param in: the reader whose content should be corrected.
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * from the unknown form
+     * @return true if no IOException occured
+     * (and thus the correcting was successful), false otherwise.
+     * @see #correct(BufferedReader, BufferedWriter, int)
+     */
+    public boolean correctGrouped(BufferedReader in, BufferedWriter out, int upToDistance){
+        try{
+            long start = System.nanoTime();
+            out.write(groupedHeader);
+            long words = correctWordsGrouped(new Tokenizer(in), out, upToDistance);
+            checkedWords.record(words, System.nanoTime() - start);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Correct the given file in parallel and report the unknown forms
+     * with the suggestions to the given writer, exactly as `correct` does.
+     * @param in: the file whose content should be corrected,
+     * in the default charset
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * from the unknown form
+     * @return true if no IOException occured
+     * (and thus the correcting was successful), false otherwise.
+     * @see #checkParallel
+     */
+    public boolean correctParallel(Path in, BufferedWriter out, int upToDistance){
+        try{
+            long start = System.nanoTime();
+            out.write(correctHeader);
+            long words = ParallelFileChecker.check(in, Charset.defaultCharset(), (chunkWords, chunkOut) -> correctWords(chunkWords, chunkOut, upToDistance, true), out);
+            checkedWords.record(words, System.nanoTime() - start);
+            return true;
+        }
+        catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Correct the given file incrementally and report the unknown forms
+     * with the suggestions to the given writer, exactly as `correct` does.
+     * The cache is not used after a change of the lexicon, the suggestion
+     * engine or the corpus of the frequencies.
+     * @param in: the file whose content should be corrected,
+     * in the default charset
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * from the unknown form
+     * @return true if no IOException occured
+     * (and thus the correcting was successful), false otherwise.
+     * @see #checkIncremental
+     */
+    public boolean correctIncremental(Path in, BufferedWriter out, int upToDistance){
+        try{
+            long start = System.nanoTime();
+            out.write(correctHeader);
+            String variant = String.format("correct %d %s %016x", upToDistance, suggesterName, frequencies.getFingerprint());
+            long words = recheck(in, variant, (chunkWords, chunkOut) -> correctWords(chunkWords, chunkOut, upToDistance, true), out);
+            checkedWords.record(words, System.nanoTime() - start);
             return true;
         }
         catch(IOException e){
@@ -136,50 +720,119 @@ public class SpellChecker {
     }
 
     /**
-     * Alternative to the filter method on Stream, to be used on Iterable.
-     * Works the same.*
-     * * Could be done easily by converting to stream, applying the filter 
-     * method on the stream and then converting back to iterable.
-     * @param <T>: type of elements in the iterable
-     * @param iterable: iterable to be filtered
-     * @param predicate: predicate used for filtering
-     * @return the filtered iterable
-     * @see java.util.stream.Stream
-     */
-    private <T> Iterable<T> filterIterable(Iterable<T> iterable, Predicate<T> predicate){
-        return new Iterable<T>(){
-            @Override
-            public Iterator<T> iterator() {
-                return new Iterator<T>(){
-
-                    private T getNextElem() {
-                        T nextElem;
-                        do {
-                            if (!allElems.hasNext()){
-                                nextElem = null;
-                                break;
-                            }
-                            nextElem = allElems.next();
-                        } while (!predicate.test(nextElem));
-                        return nextElem;
-                    }
-        
-                    private Iterator<T> allElems = iterable.iterator();
-                    private T bufferedElem = getNextElem();
-                    
-        
-                    @Override
-                    public boolean hasNext() {
-                        return bufferedElem != null;
-                    }
-        
-                    @Override
-                    public T next() {
-                        T toReturn = bufferedElem;
-                        bufferedElem = getNextElem();
-                        return toReturn;
-                    }};
+     * Report the unknown forms among the given words with the suggestions,
+     * in the order of the text. The unknown forms are collected first,
+     * so that the suggestions are found once per distinct form.
+     * @param words: the tokenizer of the checked text
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * @param parallel: whether the suggestions of the forms are found in parallel
+     * @return the number of the checked words
+     * @throws IOException if the writing fails
+     */
+    private long correctWords(Tokenizer words, Writer out, int upToDistance, boolean parallel) throws IOException{
+        UnknownWords unknown = new UnknownWords();
+        long checked = collectUnknown(words, unknown);
+        String[] forms = new String[unknown.size()];
+        List<List<Suggestion>> suggestions = suggestAll(unknown, forms, upToDistance, parallel);
+        for (int i = 0; i < unknown.getOccurrences(); i++){
+            int id = unknown.getFormId(i);
+            out.write(unknown.getRow(i) + ":" + "\t" + forms[id] + "\t" + "->" + "\t");
+            writeSuggestions(suggestions.get(id), out);
+        }
+        return checked;
+    }
+
+    /**
+     * Report every distinct unknown form among the given words once,
+     * with the number of its occurrences, its rows and the suggestions,
+     * in the order of the first occurrences.
+     * @param words: the tokenizer of the checked text
+     * @param out: the writer where the unknown forms and suggestions are reported.
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * @return the number of the checked words
+     * @throws IOException if the writing fails
+     */
+    private long correctWordsGrouped(Tokenizer words, Writer out, int upToDistance) throws IOException{
+        UnknownWords unknown = new UnknownWords();
+        long checked = collectUnknown(words, unknown);
+        String[] forms = new String[unknown.size()];
+        List<List<Suggestion>> suggestions = suggestAll(unknown, forms, upToDistance, true);
+        StringBuilder rows = new StringBuilder();
+        for (int id = 0; id < forms.length; id++){
+            int count = 0;
+            rows.setLength(0);
+            for (int i = unknown.getFirstOccurrence(id); i >= 0; i = unknown.getNextOccurrence(i)){
+                if (count++ > 0){
+                    rows.append(", ");
+                }
+                rows.append(unknown.getRow(i));
+            }
+            out.write(forms[id] + "\t" + count + "\t" + rows + "\t" + "->" + "\t");
+            writeSuggestions(suggestions.get(id), out);
+        }
+        return checked;
+    }
+
+    /**
+     * Collect the unknown forms among the given words.
+     * @param words: the tokenizer of the checked text
+     * @param unknown: the table where the unknown forms are added
+     * @return the number of the checked words
+     * @throws IOException if the reading fails
+     */
+    private long collectUnknown(Tokenizer words, UnknownWords unknown) throws IOException{
+        long checked = 0;
+        try{
+            while (words.next()){
+                checked++;
+                if (!lexicon.contains(words.getBuffer(), words.getOffset(), words.getLength())){
+                    unknown.add(words.getBuffer(), words.getOffset(), words.getLength(), words.getRow());
+                }
+            }
+        }
+        finally{
+            lookupHits.add(checked - unknown.getOccurrences());
+            lookupMisses.add(unknown.getOccurrences());
+            distinctUnknown.add(unknown.size());
+        }
+        return checked;
+    }
+
+    /**
+     * Find the suggestions of all the distinct unknown forms.
+     * @param unknown: the unknown forms
+     * @param forms: the array to be filled with the forms by their ids
+     * @param upToDistance: the maximal Levehnstein distance of the suggestions
+     * @param parallel: whether the suggestions are found in parallel
+     * (on the common fork-join pool) or on the calling thread
+     * @return the best suggestions of the forms by their ids
+     */
+    private List<List<Suggestion>> suggestAll(UnknownWords unknown, String[] forms, int upToDistance, boolean parallel){
+        for (int id = 0; id < forms.length; id++){
+            forms[id] = unknown.getForm(id);
+        }
+        IntStream ids = IntStream.range(0, forms.length);
+        return (parallel ? ids.parallel() : ids)
+            .mapToObj(id -> suggest(forms[id], upToDistance, suggestionsPerWord))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Report the suggestions of an unknown word and end the line.
+     * @param suggestions: the suggestions, the best first
+     * @param out: the writer where the suggestions are reported.
+     * @throws IOException if the writing fails
+     */
+    private void writeSuggestions(List<Suggestion> suggestions, Writer out) throws IOException{
+        int counter = 0;
+        for (Suggestion suggestion: suggestions){
+            out.write(suggestion.form() + " (" + suggestion.distance() + ")");
+            if (++counter < suggestionsPerWord){
+                out.write(", ");
             }
-        }; 
+        }
+
+        out.write("\n");
     }
-}
\ No newline at end of file
+}
@@ -3,43 +3,32 @@ package cz.cuni.mff.souradat.spellcheck.spellchecker;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.HashSet;
 
 /**
  * Class for converting io stream to an iterable of row-numbered words.
+ * The words are found by the Tokenizer, this class only wraps them
+ * into the objects; the code processing many words should rather use
+ * the Tokenizer directly.
+ * @see cz.cuni.mff.souradat.spellcheck.spellchecker.Tokenizer
  */
 public class Stream2WordsRowsNums implements Iterable<WordWithRowNum> {
 
     private BufferedReader inputStream;
+    private int firstRowNum;
 
     public Stream2WordsRowsNums(BufferedReader inputStream){
-        this.inputStream = inputStream;
+        this(inputStream, 1);
     }
 
     /**
-     * The default alphabet of known Czech characters,
-     * used to determine whether a character is word character or not.
-     */
-    private static Set<Character> alphabet = new HashSet<Character>();
-    static {
-        for (char c = 'a'; c<= 'z'; c++){
-            alphabet.add(c);
-            alphabet.add(Character.toUpperCase(c));
-        }
-        for (char c: new char[]{'á', 'é', 'í', 'ý', 'ó', 'ú', 'ů', 'ž', 'š', 'č', 'ř', 'ď', 'ť', 'ň', 'ě'}){
-            alphabet.add(c);
-            alphabet.add(Character.toUpperCase(c));
-        }
-    }
-    
-    /**
-     * Determines, whether the given character is a word character.
-     * @param c: the character to be checked.
-     * @return true if the character is a word character, false otherwise
+     * Create the iterable of the words of a stream that starts
+     * in the middle of a file.
+     * @param inputStream: the stream
+     * @param firstRowNum: the row number of the first row of the stream
      */
-    private static boolean isWordCharacter(char c){
-        return (alphabet.contains(c));
+    public Stream2WordsRowsNums(BufferedReader inputStream, int firstRowNum){
+        this.inputStream = inputStream;
+        this.firstRowNum = firstRowNum;
     }
 
     @Override
@@ -49,33 +38,12 @@ public class Stream2WordsRowsNums implements Iterable<WordWithRowNum> {
      */
     public Iterator<WordWithRowNum> iterator() {
         return new Iterator<WordWithRowNum>(){
-            private int rowNum = 1;
+            private Tokenizer tokenizer = new Tokenizer(inputStream, firstRowNum, WordCharacters.getDefault());
 
             private WordWithRowNum getNextWord() {
-                StringBuilder builder = new StringBuilder();
-                int c;
                 try {
-                    while ((c = inputStream.read()) != -1){
-                        char ch = (char) c;
-                        if (!isWordCharacter(ch)){
-                            if (builder.length()!=0){
-                                WordWithRowNum result = new WordWithRowNum(builder.toString(), rowNum);
-                                if (c == '\n'){
-                                    rowNum++;
-                                }
-                                return result;
-                            }
-                        }
-                        else{
-                            builder.append(ch);
-                        }
-                        if (c == '\n'){
-                            rowNum++;
-                        }
-
-                    }
-                    if (builder.length()!=0){
-                        return new WordWithRowNum(builder.toString(), rowNum);
+                    if (tokenizer.next()){
+                        return new WordWithRowNum(tokenizer.getWord(), tokenizer.getRow());
                     }
                     return null;
                 }
@@ -98,4 +66,4 @@ public class Stream2WordsRowsNums implements Iterable<WordWithRowNum> {
                 return toReturn;
             }};
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,257 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import cz.cuni.mff.souradat.spellcheck.lexicon.Levenshtein;
+import cz.cuni.mff.souradat.spellcheck.lexicon.Suggestion;
+
+/**
+ * Size-bounded cache of the best suggestions, keyed by the form, the distance
+ * and the number of the suggestions.
+ * The cache is split into segments, every segment is a LinkedHashMap
+ * in the access order guarded by its own lock, which evicts
+ * the least recently used entry when it is full.
+ *
+ * When a form is added to the lexicon, all the entries whose suggestions
+ * could change are removed: the added form can appear among
+ * the suggestions (or make one of its case variants known) only if its
+ * lowercased variant is close enough to the lowercased form of the entry.
+ * Suggestions computed while a form was being added are not stored.
+ *
+ * The cache can be stored to a file and loaded in the next run,
+ * together with the fingerprint of the lexicon and the name of the
+ * suggestion engine, which both have to match.
+ */
+public class SuggestionCache {
+    /** Magic number at the beginning of the cache file, "SPSC".*/
+    private static final int magic = 0x53505343;
+    /** Version of the cache file format, increase on every incompatible change.*/
+    private static final int version = 3;
+    private static final int segmentCount = 16;
+
+    /** Key of the cache.*/
+    private record Key(String form, int distance, int count) {}
+
+    /** One segment of the cache, evicting the least recently used entries.*/
+    private static class Segment extends LinkedHashMap<Key, List<Suggestion>> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity){
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<Suggestion>> eldest){
+            return size() > capacity;
+        }
+    }
+
+    private final Segment[] segments = new Segment[segmentCount];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    /** Increased on every invalidation, suggestions computed during
+     * an invalidation are not stored.*/
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create an empty cache.
+     * @param capacity: the maximal number of the cached entries
+     */
+    public SuggestionCache(int capacity){
+        int segmentCapacity = Math.max(1, (capacity + segmentCount - 1) / segmentCount);
+        for (int i = 0; i < segmentCount; i++){
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Get the cached suggestions, or compute and cache them.
+     * @param form: the alternated form
+     * @param distance: the maximal distance of the suggestions
+     * @param count: the maximal number of the suggestions
+     * @param suggestions: computes the suggestions if they are not cached
+     * @return the suggestions
+     */
+    public List<Suggestion> get(String form, int distance, int count, Supplier<List<Suggestion>> suggestions){
+        Key key = new Key(form, distance, count);
+        Segment segment = segmentOf(key);
+        List<Suggestion> cached;
+        synchronized(segment){
+            cached = segment.get(key);
+        }
+        if (cached != null){
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        long computedIn = generation.get();
+        List<Suggestion> computed = List.copyOf(suggestions.get());
+        synchronized(segment){
+            if (generation.get() == computedIn){
+                segment.put(key, computed);
+            }
+        }
+        return computed;
+    }
+
+    /**
+     * Remove all the entries whose suggestions could change
+     * by adding the given form to the lexicon.
+     * @param addedForm: the added form
+     */
+    public void invalidate(String addedForm){
+        generation.incrementAndGet();
+        String lowered = lowerChars(addedForm);
+        for (Segment segment: segments){
+            synchronized(segment){
+                segment.keySet().removeIf(key -> Levenshtein.distance(lowered, lowerChars(key.form), key.distance) <= key.distance);
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear(){
+        generation.incrementAndGet();
+        for (Segment segment: segments){
+            synchronized(segment){
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of the cached entries.
+     * @return the number of entries
+     */
+    public int size(){
+        int size = 0;
+        for (Segment segment: segments){
+            synchronized(segment){
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of the requests answered from the cache.
+     * @return the number of hits
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of the requests that had to compute the suggestions.
+     * @return the number of misses
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * Store the cache to the given file.
+     * The file is first written to a temporary file,
+     * which then atomically replaces the given file.
+     * @param path: the cache file
+     * @param fingerprint: the fingerprint of the lexicon
+     * @param suggesterName: name of the suggestion engine
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path, long fingerprint, String suggesterName) throws IOException{
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeLong(fingerprint);
+            out.writeUTF(suggesterName);
+            for (Segment segment: segments){
+                List<Map.Entry<Key, List<Suggestion>>> entries;
+                synchronized(segment){
+                    entries = new ArrayList<>(segment.entrySet());
+                }
+                // the least recently used first, so the order is kept by loading
+                for (Map.Entry<Key, List<Suggestion>> entry: entries){
+                    out.writeBoolean(true);
+                    out.writeUTF(entry.getKey().form);
+                    out.writeInt(entry.getKey().distance);
+                    out.writeInt(entry.getKey().count);
+                    out.writeInt(entry.getValue().size());
+                    for (Suggestion suggestion: entry.getValue()){
+                        out.writeUTF(suggestion.form());
+                        out.writeInt(suggestion.distance());
+                    }
+                }
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the entries stored in the given file, if it was stored
+     * for the same lexicon and suggestion engine.
+     * @param path: the cache file
+     * @param fingerprint: the fingerprint of the lexicon
+     * @param suggesterName: name of the suggestion engine
+     * @return true if the entries were loaded, false if the file does not
+     * exist or it was stored for another lexicon or engine
+     * @throws IOException if the file cannot be read
+     */
+    public boolean load(Path path, long fingerprint, String suggesterName) throws IOException{
+        if (!Files.isRegularFile(path)){
+            return false;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))){
+            if (in.readInt() != magic || in.readInt() != version
+                || in.readLong() != fingerprint || !in.readUTF().equals(suggesterName)){
+                return false;
+            }
+            while (in.readBoolean()){
+                Key key = new Key(in.readUTF(), in.readInt(), in.readInt());
+                Suggestion[] suggestions = new Suggestion[in.readInt()];
+                for (int i = 0; i < suggestions.length; i++){
+                    suggestions[i] = new Suggestion(in.readUTF(), in.readInt());
+                }
+                Segment segment = segmentOf(key);
+                synchronized(segment){
+                    segment.put(key, List.of(suggestions));
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get the segment of the given key.
+     * @param key: the key
+     * @return the segment
+     */
+    private Segment segmentOf(Key key){
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segmentCount - 1)];
+    }
+
+    /**
+     * Lowercase every character of the given string separately,
+     * so that the Levenshtein distance of two strings never grows.
+     * @param s: the string
+     * @return the lowercased string of the same length
+     */
+    private static String lowerChars(String s){
+        char[] chars = new char[s.length()];
+        for (int i = 0; i < chars.length; i++){
+            chars[i] = Character.toLowerCase(s.charAt(i));
+        }
+        return new String(chars);
+    }
+}
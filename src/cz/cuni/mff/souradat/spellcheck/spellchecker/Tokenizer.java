@@ -0,0 +1,169 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits the text into words (maximal sequences of word characters)
+ * and counts the rows.
+ * The text is read in large blocks into one char array and the words
+ * are returned as its slices (offset, length) together with their row
+ * numbers, so no object is created per word. The slice of the current
+ * word is valid only until the next call of `next`.
+ *
+ * Usage:
+ *     Tokenizer words = new Tokenizer(in);
+ *     while (words.next()){
+ *         ... words.getBuffer(), words.getOffset(), words.getLength(), words.getRow()
+ *     }
+ * @see cz.cuni.mff.souradat.spellcheck.spellchecker.WordCharacters
+ */
+public class Tokenizer {
+    private static final int blockSize = 1 << 16;
+
+    private final Reader in;
+    private final WordCharacters wordCharacters;
+    private char[] buffer = new char[blockSize];
+    /** Number of the valid characters in the buffer.*/
+    private int limit = 0;
+    /** Position of the next unread character.*/
+    private int position = 0;
+    private int row;
+    private boolean eof = false;
+
+    private int offset;
+    private int length;
+    private int wordRow;
+
+    public Tokenizer(Reader in){
+        this(in, 1, WordCharacters.getDefault());
+    }
+
+    /**
+     * Create the tokenizer of a text that starts in the middle of a file.
+     * @param in: the text
+     * @param firstRow: the row number of the first row of the text
+     * @param wordCharacters: the characters forming the words
+     */
+    public Tokenizer(Reader in, int firstRow, WordCharacters wordCharacters){
+        this.in = in;
+        this.row = firstRow;
+        this.wordCharacters = wordCharacters;
+    }
+
+    /**
+     * Move to the next word.
+     * @return true if there is a next word, false at the end of the text
+     * @throws IOException if the text cannot be read
+     */
+    public boolean next() throws IOException{
+        // skip the characters between the words
+        while (true){
+            if (position == limit && !fill(position)){
+                return false;
+            }
+            char c = buffer[position];
+            if (wordCharacters.contains(c)){
+                break;
+            }
+            if (c == '\n'){
+                row++;
+            }
+            position++;
+        }
+        int start = position;
+        wordRow = row;
+        while (true){
+            if (position == limit){
+                boolean more = fill(start);
+                // the beginning of the word was moved to the start of the buffer
+                start = 0;
+                if (!more){
+                    break;
+                }
+                continue;
+            }
+            if (!wordCharacters.contains(buffer[position])){
+                break;
+            }
+            position++;
+        }
+        offset = start;
+        length = position - start;
+        return true;
+    }
+
+    /**
+     * Get the buffer containing the current word.
+     * @return the buffer
+     */
+    public char[] getBuffer(){
+        return buffer;
+    }
+
+    /**
+     * Get the position of the current word in the buffer.
+     * @return the offset of the first character of the word
+     */
+    public int getOffset(){
+        return offset;
+    }
+
+    /**
+     * Get the length of the current word.
+     * @return the number of characters of the word
+     */
+    public int getLength(){
+        return length;
+    }
+
+    /**
+     * Get the row number of the current word.
+     * @return the row number, counted from the first row given to the constructor
+     */
+    public int getRow(){
+        return wordRow;
+    }
+
+    /**
+     * Get the current word as a String.
+     * @return the current word
+     */
+    public String getWord(){
+        return new String(buffer, offset, length);
+    }
+
+    /**
+     * Read the next block of the text, keeping the characters
+     * from the given position (moved to the start of the buffer).
+     * @param keep: the position of the first character to be kept
+     * @return true if some characters were read, false at the end of the text
+     * @throws IOException if the text cannot be read
+     */
+    private boolean fill(int keep) throws IOException{
+        int kept = limit - keep;
+        if (kept == buffer.length){
+            char[] larger = new char[2 * buffer.length];
+            System.arraycopy(buffer, keep, larger, 0, kept);
+            buffer = larger;
+        }
+        else if (kept > 0){
+            System.arraycopy(buffer, keep, buffer, 0, kept);
+        }
+        limit = kept;
+        position = kept;
+        if (eof){
+            return false;
+        }
+        int read;
+        do{
+            read = in.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read < 0){
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+}
@@ -0,0 +1,197 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.util.Arrays;
+
+/**
+ * The unknown words of a text: the distinct forms (case-sensitively)
+ * and their occurrences in the order of the text, so that the suggestions
+ * are found once per distinct form.
+ *
+ * The table is stored in a few primitive arrays, as the FrequencyTable:
+ * the characters of the forms one after another, the offsets of the forms,
+ * an open addressing table of the form ids, and for every occurrence its row,
+ * the id of its form and the next occurrence of the same form.
+ * @see cz.cuni.mff.souradat.spellcheck.spellchecker.FrequencyTable
+ */
+class UnknownWords {
+    private char[] chars = new char[1 << 10];
+    /** Start of the i-th form in `chars`, the i+1-th item is its end.*/
+    private int[] offsets = new int[1 << 8];
+    /** The first and the last occurrence of the i-th form.*/
+    private int[] firsts = new int[1 << 8];
+    private int[] lasts = new int[1 << 8];
+    private int size;
+    /** Open addressing table of the form ids increased by one, 0 means empty slot.*/
+    private int[] slots = new int[1 << 9];
+
+    private int[] rows = new int[1 << 8];
+    private int[] formIds = new int[1 << 8];
+    /** The next occurrence of the same form, -1 for the last one.*/
+    private int[] nexts = new int[1 << 8];
+    private int occurrences;
+
+    /**
+     * Add an occurrence of the unknown word given by a slice of a char array.
+     * @param buffer: the array containing the word
+     * @param offset: the position of the first character of the word
+     * @param length: the length of the word
+     * @param row: the row of the occurrence
+     */
+    void add(char[] buffer, int offset, int length, int row){
+        int hash = 1;
+        for (int i = 0; i < length; i++){
+            hash = 31 * hash + buffer[offset + i];
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        int id = -1;
+        while (slots[slot] != 0){
+            int candidate = slots[slot] - 1;
+            int start = offsets[candidate];
+            if (offsets[candidate + 1] - start == length && Arrays.equals(chars, start, start + length, buffer, offset, offset + length)){
+                id = candidate;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (id < 0){
+            id = addForm(buffer, offset, length, slot);
+        }
+
+        if (occurrences == rows.length){
+            rows = Arrays.copyOf(rows, rows.length * 2);
+            formIds = Arrays.copyOf(formIds, formIds.length * 2);
+            nexts = Arrays.copyOf(nexts, nexts.length * 2);
+        }
+        rows[occurrences] = row;
+        formIds[occurrences] = id;
+        nexts[occurrences] = -1;
+        if (lasts[id] >= 0){
+            nexts[lasts[id]] = occurrences;
+        }
+        else{
+            firsts[id] = occurrences;
+        }
+        lasts[id] = occurrences++;
+    }
+
+    /**
+     * Store a new form to the given empty slot.
+     * @param buffer: the array containing the form
+     * @param offset: the position of the first character of the form
+     * @param length: the length of the form
+     * @param slot: the empty slot of the form
+     * @return the id of the form
+     */
+    private int addForm(char[] buffer, int offset, int length, int slot){
+        if (size + 2 > offsets.length){
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            firsts = Arrays.copyOf(firsts, firsts.length * 2);
+            lasts = Arrays.copyOf(lasts, lasts.length * 2);
+        }
+        int start = offsets[size];
+        if (start + length > chars.length){
+            chars = Arrays.copyOf(chars, Math.max(start + length, chars.length * 2));
+        }
+        System.arraycopy(buffer, offset, chars, start, length);
+        offsets[size + 1] = start + length;
+        lasts[size] = -1;
+        int id = size;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length){
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Get the number of the distinct forms.
+     * @return the number of the forms
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * Get the form with the given id, the ids are given
+     * in the order of the first occurrences.
+     * @param id: the id, from 0 to `size() - 1`
+     * @return the form
+     */
+    String getForm(int id){
+        return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    /**
+     * Get the number of the occurrences of all the forms.
+     * @return the number of the occurrences
+     */
+    int getOccurrences(){
+        return occurrences;
+    }
+
+    /**
+     * Get the row of the occurrence.
+     * @param occurrence: the index of the occurrence in the text
+     * @return the row
+     */
+    int getRow(int occurrence){
+        return rows[occurrence];
+    }
+
+    /**
+     * Get the id of the form of the occurrence.
+     * @param occurrence: the index of the occurrence in the text
+     * @return the id of the form
+     */
+    int getFormId(int occurrence){
+        return formIds[occurrence];
+    }
+
+    /**
+     * Get the first occurrence of the form.
+     * @param id: the id of the form
+     * @return the index of the occurrence
+     */
+    int getFirstOccurrence(int id){
+        return firsts[id];
+    }
+
+    /**
+     * Get the next occurrence of the same form.
+     * @param occurrence: the index of an occurrence
+     * @return the index of the next occurrence, -1 if it is the last one
+     */
+    int getNextOccurrence(int occurrence){
+        return nexts[occurrence];
+    }
+
+    /**
+     * Double the table of the form ids.
+     */
+    private void rehash(){
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++){
+            int hash = 1;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++){
+                hash = 31 * hash + chars[i];
+            }
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spread the bits of a hash, so that the low bits depend on all of them.
+     * @param hash: the hash
+     * @return the mixed hash
+     */
+    private static int mix(int hash){
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
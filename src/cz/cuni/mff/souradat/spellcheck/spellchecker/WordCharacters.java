@@ -0,0 +1,142 @@
+package cz.cuni.mff.souradat.spellcheck.spellchecker;
+
+import java.util.Map;
+
+/**
+ * Set of the characters that form the words, stored as a bitset
+ * over all the UTF-16 characters, so the test of a character is one
+ * array access without boxing.
+ * The default set (the property `spellcheck.wordchars` not set) contains
+ * the Czech letters. Otherwise the property lists the Unicode general
+ * categories of the word characters separated by commas, either the full
+ * two-letter names (e.g. `Lu,Ll,Mn`) or the one-letter groups (e.g. `L,M`).
+ * The characters outside of the basic multilingual plane (surrogates)
+ * are never word characters.
+ */
+public class WordCharacters {
+    /** System property setting the Unicode categories of the word characters.*/
+    public static final String property = "spellcheck.wordchars";
+
+    private static final Map<String, Byte> categories = Map.ofEntries(
+        Map.entry("Lu", Character.UPPERCASE_LETTER),
+        Map.entry("Ll", Character.LOWERCASE_LETTER),
+        Map.entry("Lt", Character.TITLECASE_LETTER),
+        Map.entry("Lm", Character.MODIFIER_LETTER),
+        Map.entry("Lo", Character.OTHER_LETTER),
+        Map.entry("Mn", Character.NON_SPACING_MARK),
+        Map.entry("Mc", Character.COMBINING_SPACING_MARK),
+        Map.entry("Me", Character.ENCLOSING_MARK),
+        Map.entry("Nd", Character.DECIMAL_DIGIT_NUMBER),
+        Map.entry("Nl", Character.LETTER_NUMBER),
+        Map.entry("No", Character.OTHER_NUMBER),
+        Map.entry("Pc", Character.CONNECTOR_PUNCTUATION),
+        Map.entry("Pd", Character.DASH_PUNCTUATION),
+        Map.entry("Ps", Character.START_PUNCTUATION),
+        Map.entry("Pe", Character.END_PUNCTUATION),
+        Map.entry("Pi", Character.INITIAL_QUOTE_PUNCTUATION),
+        Map.entry("Pf", Character.FINAL_QUOTE_PUNCTUATION),
+        Map.entry("Po", Character.OTHER_PUNCTUATION),
+        Map.entry("Sm", Character.MATH_SYMBOL),
+        Map.entry("Sc", Character.CURRENCY_SYMBOL),
+        Map.entry("Sk", Character.MODIFIER_SYMBOL),
+        Map.entry("So", Character.OTHER_SYMBOL),
+        Map.entry("Zs", Character.SPACE_SEPARATOR),
+        Map.entry("Zl", Character.LINE_SEPARATOR),
+        Map.entry("Zp", Character.PARAGRAPH_SEPARATOR),
+        Map.entry("Cc", Character.CONTROL),
+        Map.entry("Cf", Character.FORMAT),
+        Map.entry("Co", Character.PRIVATE_USE),
+        Map.entry("Cn", Character.UNASSIGNED)
+    );
+
+    private static WordCharacters defaultCharacters;
+
+    /** Bit c is set if the character c is a word character.*/
+    private final long[] bits = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+
+    private WordCharacters(){
+    }
+
+    /**
+     * Get the word characters chosen by the property `property`.
+     * @return the default word characters
+     * @throws Error if the property names an unknown category
+     */
+    public static synchronized WordCharacters getDefault(){
+        if (defaultCharacters == null){
+            String spec = System.getProperty(property);
+            try{
+                defaultCharacters = spec == null ? czech() : fromUnicodeCategories(spec);
+            }
+            catch(IllegalArgumentException e){
+                throw new Error(e.getMessage(), e);
+            }
+        }
+        return defaultCharacters;
+    }
+
+    /**
+     * Get the set of the Czech letters (the letters of the English alphabet
+     * and the Czech letters with diacritics, both lowercase and uppercase).
+     * @return the set of the Czech letters
+     */
+    public static WordCharacters czech(){
+        WordCharacters set = new WordCharacters();
+        for (char c = 'a'; c<= 'z'; c++){
+            set.add(c);
+            set.add(Character.toUpperCase(c));
+        }
+        for (char c: new char[]{'á', 'é', 'í', 'ý', 'ó', 'ú', 'ů', 'ž', 'š', 'č', 'ř', 'ď', 'ť', 'ň', 'ě'}){
+            set.add(c);
+            set.add(Character.toUpperCase(c));
+        }
+        return set;
+    }
+
+    /**
+     * Get the set of all the characters of the given Unicode general categories.
+     * @param spec: the categories separated by commas, e.g. `L,Mn`
+     * @return the set of the characters
+     * @throws IllegalArgumentException if some category is unknown
+     */
+    public static WordCharacters fromUnicodeCategories(String spec){
+        boolean[] chosen = new boolean[Byte.MAX_VALUE + 1];
+        for (String name: spec.split(",")){
+            name = name.trim();
+            boolean found = false;
+            for (Map.Entry<String, Byte> category: categories.entrySet()){
+                if (category.getKey().equals(name) || category.getKey().substring(0, 1).equals(name)){
+                    chosen[category.getValue()] = true;
+                    found = true;
+                }
+            }
+            if (!found){
+                throw new IllegalArgumentException(String.format("Unknown Unicode category %s in the property %s.", name, property));
+            }
+        }
+        WordCharacters set = new WordCharacters();
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++){
+            if (!Character.isSurrogate((char) c) && chosen[Character.getType(c)]){
+                set.add((char) c);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Determines, whether the given character is a word character.
+     * @param c: the character to be checked.
+     * @return true if the character is a word character, false otherwise
+     */
+    public boolean contains(char c){
+        return (bits[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * Add the character to the set.
+     * @param c: the character
+     */
+    private void add(char c){
+        bits[c >>> 6] |= 1L << c;
+    }
+}
@@ -0,0 +1,300 @@
+package cz.cuni.mff.souradat.spellcheck.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+/**Minimal deterministic acyclic word graph (DAWG).
+ * Works like a read-only set of strings, but unlike the Trie
+ * it shares not only the common prefixes, but also the common suffixes
+ * of the words, which makes it much smaller for inflected languages.
+ *
+ * The graph is built incrementally from the words sorted in increasing order,
+ * see Daciuk et al.: Incremental Construction of Minimal Acyclic
+ * Finite-State Automata (2000).
+ * Once built, it cannot be changed.
+ *
+ * All the states are stored in primitive arrays indexed by the state id,
+ * the outgoing edges of a state are stored one after another
+ * (sorted by their labels) and the last one of them is marked.
+ * As an IAutomaton, every edge is represented by its index.
+ */
+public class Dawg implements IAutomaton {
+    private int root;
+    /** Index of the first outgoing edge of the state.*/
+    private int[] firstEdge;
+    /** Bitset of the accepting states.*/
+    private long[] finalStates;
+    /** Character on the edge.*/
+    private char[] labels;
+    /** State the edge leads to.*/
+    private int[] targets;
+    /** Bitset of the edges that are the last outgoing edge of their state.*/
+    private long[] lastEdges;
+    private int stateCount;
+    private int edgeCount;
+
+    private Dawg(){
+        firstEdge = new int[16];
+        finalStates = new long[1];
+        labels = new char[16];
+        targets = new int[16];
+        lastEdges = new long[1];
+    }
+
+    /**Creates Dawg from a Stream of Strings sorted in increasing order.
+     * Duplicate words are allowed.
+     * @param stream: sorted Stream of Strings representing
+     * the words that are added to the graph.
+     * @return the built graph.
+     * @throws IllegalArgumentException if the words are not sorted
+     */
+    public static Dawg fromSortedStream(Stream<String> stream){
+        Builder builder = new Builder();
+        Iterable<String> words = () -> stream.iterator();
+        for (String word: words){
+            builder.add(word);
+        }
+        return builder.build();
+    }
+
+    /** Get the number of states of the graph.
+     * @return the number of states.
+     */
+    public int size(){
+        return stateCount;
+    }
+
+    /** Get the number of edges of the graph.
+     * @return the number of edges.
+     */
+    public int getEdgeCount(){
+        return edgeCount;
+    }
+
+    @Override
+    public int getRoot(){
+        return root;
+    }
+
+    @Override
+    public boolean isFinal(int state){
+        return (finalStates[state >>> 6] & (1L << state)) != 0;
+    }
+
+    @Override
+    public int step(int state, char c){
+        for (int edge = firstEdge[state]; edge != NONE; edge = getNextEdge(edge)){
+            char label = labels[edge];
+            if (label == c){
+                return targets[edge];
+            }
+            if (label > c){
+                break;
+            }
+        }
+        return NONE;
+    }
+
+    @Override
+    public int getFirstEdge(int state){
+        return firstEdge[state];
+    }
+
+    @Override
+    public int getNextEdge(int edge){
+        return (lastEdges[edge >>> 6] & (1L << edge)) != 0 ? NONE : edge + 1;
+    }
+
+    @Override
+    public char getLabel(int edge){
+        return labels[edge];
+    }
+
+    @Override
+    public int getTarget(int edge){
+        return targets[edge];
+    }
+
+    /** Add a new state with the given edges to the arrays.
+     * @param isFinal: whether the state is accepting
+     * @param edgeLabels: labels of the outgoing edges, sorted
+     * @param edgeTargets: targets of the outgoing edges
+     * @param count: number of the outgoing edges
+     * @return id of the new state
+     */
+    private int addState(boolean isFinal, char[] edgeLabels, int[] edgeTargets, int count){
+        if (stateCount == firstEdge.length){
+            firstEdge = Arrays.copyOf(firstEdge, stateCount + (stateCount >> 1));
+        }
+        if ((stateCount >>> 6) == finalStates.length){
+            finalStates = Arrays.copyOf(finalStates, finalStates.length * 2);
+        }
+        while (edgeCount + count > labels.length){
+            int capacity = labels.length + (labels.length >> 1);
+            labels = Arrays.copyOf(labels, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+        }
+        while (((edgeCount + count) >>> 6) >= lastEdges.length){
+            lastEdges = Arrays.copyOf(lastEdges, lastEdges.length * 2);
+        }
+
+        int state = stateCount++;
+        if (isFinal){
+            finalStates[state >>> 6] |= 1L << state;
+        }
+        if (count == 0){
+            firstEdge[state] = NONE;
+            return state;
+        }
+        firstEdge[state] = edgeCount;
+        System.arraycopy(edgeLabels, 0, labels, edgeCount, count);
+        System.arraycopy(edgeTargets, 0, targets, edgeCount, count);
+        edgeCount += count;
+        int last = edgeCount - 1;
+        lastEdges[last >>> 6] |= 1L << last;
+        return state;
+    }
+
+    /** Release the unused capacity of the arrays.*/
+    private void trimToSize(){
+        firstEdge = Arrays.copyOf(firstEdge, stateCount);
+        finalStates = Arrays.copyOf(finalStates, (stateCount + 63) >>> 6);
+        labels = Arrays.copyOf(labels, edgeCount);
+        targets = Arrays.copyOf(targets, edgeCount);
+        lastEdges = Arrays.copyOf(lastEdges, (edgeCount + 63) >>> 6);
+    }
+
+    /**
+     * Incremental builder of the Dawg.
+     * Keeps the path of the last added word, which is not minimized yet.
+     * When a new word is added, the part of the path that is not shared
+     * with the new word can no longer change, so its states are replaced
+     * by equivalent already registered states or registered as new states.
+     */
+    public static class Builder {
+        private Dawg dawg = new Dawg();
+        /** Registered states, by their signature (finality and edges).*/
+        private HashMap<Signature, Integer> register = new HashMap<>();
+        /** The states on the path of the last added word,
+         * the i-th state is reached after reading i characters.*/
+        private ArrayList<PathState> path = new ArrayList<>();
+        private String previous = "";
+        private boolean built = false;
+
+        public Builder(){
+            path.add(new PathState());
+        }
+
+        /** Add the next word to the graph.
+         * @param word: the word, not smaller than the previously added word
+         * @throws IllegalArgumentException if the word is smaller
+         * than the previously added word
+         * @throws IllegalStateException if the graph was already built
+         */
+        public void add(String word){
+            if (built){
+                throw new IllegalStateException("The graph was already built.");
+            }
+            int cmp = word.compareTo(previous);
+            if (cmp == 0){
+                path.get(word.length()).isFinal = true;
+                return;
+            }
+            if (cmp < 0){
+                throw new IllegalArgumentException(String.format("The words are not sorted: %s after %s.", word, previous));
+            }
+
+            int common = 0;
+            int max = Math.min(word.length(), previous.length());
+            while (common < max && word.charAt(common) == previous.charAt(common)){
+                common++;
+            }
+            minimizeDownTo(common);
+            for (int i = common; i < word.length(); i++){
+                path.add(new PathState());
+            }
+            path.get(word.length()).isFinal = true;
+            previous = word;
+        }
+
+        /** Minimize the rest of the path and get the built graph.
+         * @return the built graph
+         */
+        public Dawg build(){
+            if (!built){
+                minimizeDownTo(0);
+                PathState root = path.get(0);
+                dawg.root = dawg.addState(root.isFinal, root.labels, root.targets, root.count);
+                dawg.trimToSize();
+                register = null;
+                path = null;
+                built = true;
+            }
+            return dawg;
+        }
+
+        /** Replace the states of the path deeper than the given length
+         * by registered states.
+         * @param length: length of the path prefix that stays unchanged
+         */
+        private void minimizeDownTo(int length){
+            for (int i = path.size() - 1; i > length; i--){
+                PathState state = path.remove(i);
+                Signature signature = new Signature(state);
+                Integer id = register.get(signature);
+                if (id == null){
+                    id = dawg.addState(state.isFinal, state.labels, state.targets, state.count);
+                    register.put(signature, id);
+                }
+                path.get(i - 1).addEdge(previous.charAt(i - 1), id);
+            }
+        }
+    }
+
+    /** State on the path of the last added word, its edges can still change.*/
+    private static class PathState {
+        boolean isFinal;
+        char[] labels = new char[2];
+        int[] targets = new int[2];
+        int count;
+
+        void addEdge(char label, int target){
+            if (count == labels.length){
+                labels = Arrays.copyOf(labels, count * 2);
+                targets = Arrays.copyOf(targets, count * 2);
+            }
+            labels[count] = label;
+            targets[count] = target;
+            count++;
+        }
+    }
+
+    /** Key of the register, two states with equal signatures
+     * accept the same set of words.*/
+    private static class Signature {
+        private final int[] data;
+        private final int hash;
+
+        Signature(PathState state){
+            data = new int[1 + 2 * state.count];
+            data[0] = state.isFinal ? 1 : 0;
+            for (int i = 0; i < state.count; i++){
+                data[1 + 2 * i] = state.labels[i];
+                data[2 + 2 * i] = state.targets[i];
+            }
+            hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof Signature && Arrays.equals(data, ((Signature) o).data);
+        }
+    }
+}
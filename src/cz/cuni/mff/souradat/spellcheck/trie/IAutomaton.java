@@ -0,0 +1,93 @@
+package cz.cuni.mff.souradat.spellcheck.trie;
+
+import java.util.function.Consumer;
+
+/**Read access to a deterministic acyclic automaton accepting a set of words
+ * (a trie or a word graph).
+ * The states and the outgoing edges of a state are represented by
+ * non-negative integers, whose meaning depends on the implementation.
+ * The outgoing edges of every state are sorted by their labels.
+ */
+public interface IAutomaton {
+    /** Value representing a missing state or edge.*/
+    public static final int NONE = -1;
+
+    /** Get the initial state of the automaton.
+     * @return the initial state.
+     */
+    public int getRoot();
+
+    /** Checks, whether the given state is accepting (it is the end of a word).
+     * @param state: the state to be checked
+     * @return true/false
+     */
+    public boolean isFinal(int state);
+
+    /** Get the state reached from the given state over the given character.
+     * @param state: the state to move from
+     * @param c: the character on the edge
+     * @return the reached state or NONE if there is no such edge
+     */
+    public int step(int state, char c);
+
+    /** Get the first (with the smallest label) outgoing edge of the state.
+     * @param state: the state whose edges are iterated
+     * @return the first edge or NONE if the state has no outgoing edges
+     */
+    public int getFirstEdge(int state);
+
+    /** Get the next outgoing edge (with greater label) of the same state.
+     * @param edge: the current edge
+     * @return the next edge or NONE if the edge was the last one
+     */
+    public int getNextEdge(int edge);
+
+    /** Get the character on the given edge.
+     * @param edge: the edge
+     * @return the label of the edge
+     */
+    public char getLabel(int edge);
+
+    /** Get the state the given edge leads to.
+     * @param edge: the edge
+     * @return the target state of the edge
+     */
+    public int getTarget(int edge);
+
+    /** Checks, whether a given word is accepted by the automaton.
+     * @param word: the word to be checked
+     * @return true/false
+     */
+    public default boolean contains(CharSequence word){
+        int state = getRoot();
+        for (int i = 0; i < word.length() && state != NONE; i++){
+            state = step(state, word.charAt(i));
+        }
+        return state != NONE && isFinal(state);
+    }
+
+    /** Pass all the accepted words, in the increasing order,
+     * to the given consumer.
+     * @param consumer: consumer of the words
+     */
+    public default void forEachWord(Consumer<String> consumer){
+        forEachWord(getRoot(), new StringBuilder(), consumer);
+    }
+
+    /** Pass all the words accepted from the given state
+     * to the given consumer, prefixed by the given prefix.
+     * @param state: the state where the words start
+     * @param prefix: the characters read before reaching the state
+     * @param consumer: consumer of the words
+     */
+    private void forEachWord(int state, StringBuilder prefix, Consumer<String> consumer){
+        if (isFinal(state)){
+            consumer.accept(prefix.toString());
+        }
+        for (int edge = getFirstEdge(state); edge != NONE; edge = getNextEdge(edge)){
+            prefix.append(getLabel(edge));
+            forEachWord(getTarget(edge), prefix, consumer);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package cz.cuni.mff.souradat.spellcheck.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**Read-only automaton stored in a flat binary snapshot file,
+ * which is memory-mapped and read directly, without any deserialization.
+ * Several processes mapping the same snapshot share its pages
+ * in the page cache of the operating system.
+ *
+ * The format of the snapshot (all numbers big-endian):
+ *    - header: magic number (int), format version (int),
+ *      offset of the root state (int), flags (int)
+ *    - the states, each of them written after all the states
+ *      reachable from it:
+ *          - final flag (highest bit) and number of edges (char)
+ *          - the edges sorted by their labels: label (char)
+ *            and offset of the target state (int), whose highest bit
+ *            marks the last edge of the state
+ * As an IAutomaton, every state is represented by the offset of its record,
+ * every edge by the offset of the edge record.
+ */
+public class MappedAutomaton implements IAutomaton {
+    /** Magic number at the beginning of every snapshot, "SPLX".*/
+    private static final int magic = 0x53504C58;
+    /** Version of the snapshot format, increase on every incompatible change.*/
+    private static final int version = 1;
+    private static final int headerSize = 16;
+    /** Flag of the snapshots of automata, whose states can be shared
+     * by more words (not only by the words with a common prefix).*/
+    private static final int sharedFlag = 1;
+
+    private static final int finalBit = 0x8000;
+    private static final int lastEdgeBit = 0x80000000;
+    private static final int edgeSize = 6;
+
+    private final ByteBuffer buffer;
+    private final int root;
+    private final boolean shared;
+    private final long stamp;
+
+    private MappedAutomaton(ByteBuffer buffer, long stamp) throws IOException{
+        if (buffer.limit() < headerSize || buffer.getInt(0) != magic){
+            throw new IOException("Not a lexicon snapshot.");
+        }
+        if (buffer.getInt(4) != version){
+            throw new IOException(String.format("Unsupported version %d of the lexicon snapshot, expected %d.", buffer.getInt(4), version));
+        }
+        this.buffer = buffer;
+        this.root = buffer.getInt(8);
+        this.shared = (buffer.getInt(12) & sharedFlag) != 0;
+        this.stamp = stamp;
+    }
+
+    /** Map the given snapshot file to the memory.
+     * @param path: path to the snapshot
+     * @return the mapped automaton
+     * @throws IOException if the file cannot be read
+     * or it is not a snapshot of the supported version
+     */
+    public static MappedAutomaton open(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long stamp = channel.size() * 31 + Files.getLastModifiedTime(path).toMillis();
+            return new MappedAutomaton(buffer, stamp);
+        }
+    }
+
+    /** Write the snapshot of the given automaton to the given file.
+     * The snapshot is first written to a temporary file,
+     * which then atomically replaces the given file.
+     * @param automaton: the automaton to be written
+     * @param shared: whether a state of the automaton can be reached
+     * by more paths (as in the Dawg), if false the automaton is
+     * expected to be a tree (as the Trie)
+     * @param path: the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(IAutomaton automaton, boolean shared, Path path) throws IOException{
+        write(path, shared, writer -> writer.writeState(automaton, automaton.getRoot()));
+    }
+
+    /** Write the snapshot of the union of two tries to the given file,
+     * the same way as `write`. The tries are walked together, so the union
+     * is never built in the memory.
+     * @param first: the first trie (e.g. a mapped snapshot)
+     * @param second: the second trie
+     * @param path: the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeUnion(IAutomaton first, IAutomaton second, Path path) throws IOException{
+        write(path, false, writer -> writer.writeUnion(first, first.getRoot(), second, second.getRoot()));
+    }
+
+    /** Write the snapshot of the words of the given trie starting with
+     * the given character to the given file, the same way as `write`.
+     * The root of the snapshot has only the edge with the given character.
+     * @param automaton: the trie
+     * @param first: the first character of the written words
+     * @param path: the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBranch(IAutomaton automaton, char first, Path path) throws IOException{
+        write(path, false, writer -> writer.writeBranch(automaton, first));
+    }
+
+    /** Write a snapshot to a temporary file, which then atomically
+     * replaces the given file.
+     * @param path: the snapshot file
+     * @param shared: whether a state can be reached by more paths
+     * @param states: writes all the states and returns the offset of the root
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(Path path, boolean shared, RootWriter states) throws IOException{
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            Writer writer = new Writer(channel, shared);
+            int root = states.write(writer);
+            writer.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(magic).putInt(version).putInt(root).putInt(shared ? sharedFlag : 0);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Writes the states of a snapshot by the given writer.*/
+    private interface RootWriter {
+        /** @param writer: the writer of the state records
+         * @return the offset of the root state
+         * @throws IOException if the file cannot be written
+         */
+        int write(Writer writer) throws IOException;
+    }
+
+    /** Checks, whether a state can be reached by more paths.
+     * @return true for the snapshots of the word graphs,
+     * false for the snapshots of the tries
+     */
+    public boolean isShared(){
+        return shared;
+    }
+
+    /** Get the stamp of the snapshot file, which changes
+     * whenever the snapshot is written again.
+     * @return the stamp computed from the size and the modification time
+     * of the file when it was mapped
+     */
+    public long getStamp(){
+        return stamp;
+    }
+
+    /** Get the size of the snapshot.
+     * @return the size in bytes
+     */
+    public int getByteSize(){
+        return buffer.limit();
+    }
+
+    @Override
+    public int getRoot(){
+        return root;
+    }
+
+    @Override
+    public boolean isFinal(int state){
+        return (buffer.getChar(state) & finalBit) != 0;
+    }
+
+    @Override
+    public int step(int state, char c){
+        int count = buffer.getChar(state) & ~finalBit;
+        int first = state + 2;
+        // binary search in the sorted edges
+        int low = 0;
+        int high = count - 1;
+        while (low <= high){
+            int middle = (low + high) >>> 1;
+            int edge = first + middle * edgeSize;
+            char label = buffer.getChar(edge);
+            if (label < c){
+                low = middle + 1;
+            }
+            else if (label > c){
+                high = middle - 1;
+            }
+            else{
+                return getTarget(edge);
+            }
+        }
+        return NONE;
+    }
+
+    @Override
+    public int getFirstEdge(int state){
+        return (buffer.getChar(state) & ~finalBit) == 0 ? NONE : state + 2;
+    }
+
+    @Override
+    public int getNextEdge(int edge){
+        return (buffer.getInt(edge + 2) & lastEdgeBit) != 0 ? NONE : edge + edgeSize;
+    }
+
+    @Override
+    public char getLabel(int edge){
+        return buffer.getChar(edge);
+    }
+
+    @Override
+    public int getTarget(int edge){
+        return buffer.getInt(edge + 2) & ~lastEdgeBit;
+    }
+
+    /** Sequential writer of the state records,
+     * every state is written after all its successors.
+     */
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer output = ByteBuffer.allocate(1 << 20);
+        /** Offsets of the already written states, only for the shared automata.*/
+        private final HashMap<Integer, Integer> written;
+        private long offset = headerSize;
+
+        Writer(FileChannel channel, boolean shared){
+            this.channel = channel;
+            this.written = shared ? new HashMap<>() : null;
+        }
+
+        /** Write the given state and all the states reachable from it.
+         * @param automaton: the written automaton
+         * @param state: the state of the written automaton
+         * @return the offset of the state record in the snapshot
+         * @throws IOException if the file cannot be written
+         */
+        int writeState(IAutomaton automaton, int state) throws IOException{
+            if (written != null){
+                Integer known = written.get(state);
+                if (known != null){
+                    return known;
+                }
+            }
+            int count = countEdges(automaton, state);
+            char[] labels = new char[count];
+            int[] targets = new int[count];
+            int i = 0;
+            for (int edge = automaton.getFirstEdge(state); edge != NONE; edge = automaton.getNextEdge(edge)){
+                labels[i] = automaton.getLabel(edge);
+                targets[i] = writeState(automaton, automaton.getTarget(edge));
+                i++;
+            }
+            int recordOffset = writeRecord(automaton.isFinal(state), labels, targets, count);
+            if (written != null){
+                written.put(state, recordOffset);
+            }
+            return recordOffset;
+        }
+
+        /** Write the root with only the edge with the given character,
+         * followed by the states reachable over it.
+         * @param automaton: the written automaton
+         * @param first: the label of the only edge of the root
+         * @return the offset of the root record in the snapshot
+         * @throws IOException if the file cannot be written
+         */
+        int writeBranch(IAutomaton automaton, char first) throws IOException{
+            int state = automaton.step(automaton.getRoot(), first);
+            if (state == NONE){
+                return writeRecord(false, new char[0], new int[0], 0);
+            }
+            int target = writeState(automaton, state);
+            return writeRecord(false, new char[]{first}, new int[]{target}, 1);
+        }
+
+        /** Write the union of the states of two tries and all the states
+         * reachable from them, the edges with the same label are merged.
+         * @param first: the first trie
+         * @param firstState: the state of the first trie, or NONE
+         * @param second: the second trie
+         * @param secondState: the state of the second trie, or NONE
+         * @return the offset of the state record in the snapshot
+         * @throws IOException if the file cannot be written
+         */
+        int writeUnion(IAutomaton first, int firstState, IAutomaton second, int secondState) throws IOException{
+            if (secondState == NONE){
+                return writeState(first, firstState);
+            }
+            if (firstState == NONE){
+                return writeState(second, secondState);
+            }
+            int maxCount = countEdges(first, firstState) + countEdges(second, secondState);
+            char[] labels = new char[maxCount];
+            int[] targets = new int[maxCount];
+            int count = 0;
+            int firstEdge = first.getFirstEdge(firstState);
+            int secondEdge = second.getFirstEdge(secondState);
+            while (firstEdge != NONE || secondEdge != NONE){
+                // the edges of both states are sorted by their labels
+                int order = firstEdge == NONE ? 1 : secondEdge == NONE ? -1
+                    : Character.compare(first.getLabel(firstEdge), second.getLabel(secondEdge));
+                if (order < 0){
+                    labels[count] = first.getLabel(firstEdge);
+                    targets[count] = writeState(first, first.getTarget(firstEdge));
+                    firstEdge = first.getNextEdge(firstEdge);
+                }
+                else if (order > 0){
+                    labels[count] = second.getLabel(secondEdge);
+                    targets[count] = writeState(second, second.getTarget(secondEdge));
+                    secondEdge = second.getNextEdge(secondEdge);
+                }
+                else{
+                    labels[count] = first.getLabel(firstEdge);
+                    targets[count] = writeUnion(first, first.getTarget(firstEdge), second, second.getTarget(secondEdge));
+                    firstEdge = first.getNextEdge(firstEdge);
+                    secondEdge = second.getNextEdge(secondEdge);
+                }
+                count++;
+            }
+            if (count >= finalBit){
+                throw new IOException("Too many edges of a single state for the lexicon snapshot.");
+            }
+            return writeRecord(first.isFinal(firstState) || second.isFinal(secondState), labels, targets, count);
+        }
+
+        /** Count the outgoing edges of a state.
+         * @param automaton: the automaton
+         * @param state: the state
+         * @return the number of the edges
+         * @throws IOException if there are too many edges for the snapshot format
+         */
+        private static int countEdges(IAutomaton automaton, int state) throws IOException{
+            int count = 0;
+            for (int edge = automaton.getFirstEdge(state); edge != NONE; edge = automaton.getNextEdge(edge)){
+                count++;
+            }
+            if (count >= finalBit){
+                throw new IOException("Too many edges of a single state for the lexicon snapshot.");
+            }
+            return count;
+        }
+
+        /** Write the record of one state, whose successors are already written.
+         * @param isFinal: whether the state is accepting
+         * @param labels: the labels of the edges, sorted
+         * @param targets: the offsets of the target states
+         * @param count: the number of the edges
+         * @return the offset of the state record in the snapshot
+         * @throws IOException if the file cannot be written
+         */
+        private int writeRecord(boolean isFinal, char[] labels, int[] targets, int count) throws IOException{
+            long recordOffset = offset;
+            if (recordOffset + 2 + (long) count * edgeSize > Integer.MAX_VALUE){
+                throw new IOException("The lexicon is too large for the snapshot format.");
+            }
+            ensureSpace(2 + count * edgeSize);
+            output.putChar((char) (count | (isFinal ? finalBit : 0)));
+            for (int i = 0; i < count; i++){
+                output.putChar(labels[i]);
+                output.putInt(i == count - 1 ? targets[i] | lastEdgeBit : targets[i]);
+            }
+            offset += 2 + count * edgeSize;
+            return (int) recordOffset;
+        }
+
+        /** Make sure the output buffer has space for the given number of bytes,
+         * flush it to the file if needed.
+         * @param bytes: number of bytes to be written
+         * @throws IOException if the file cannot be written
+         */
+        private void ensureSpace(int bytes) throws IOException{
+            if (output.remaining() < bytes){
+                flush();
+            }
+            if (output.remaining() < bytes){
+                throw new IOException("Too large state for the lexicon snapshot.");
+            }
+        }
+
+        /** Write the content of the output buffer to the file.
+         * @throws IOException if the file cannot be written
+         */
+        void flush() throws IOException{
+            output.flip();
+            long position = offset - output.remaining();
+            while (output.hasRemaining()){
+                position += channel.write(output, position);
+            }
+            output.clear();
+        }
+    }
+}
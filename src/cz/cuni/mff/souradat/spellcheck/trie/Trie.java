@@ -1,14 +1,44 @@
 package cz.cuni.mff.souradat.spellcheck.trie;
 
-import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**Character-based Trie datastructure.
- * Works like a simple (and memory saving) set of strings. 
+ * Works like a simple (and memory saving) set of strings.
  * Based on an example from https://www.baeldung.com/trie-java
+ *
+ * The nodes are not separate objects, the whole trie is stored
+ * in primitive arrays (arenas) indexed by the node id.
+ * Every node knows its first child and its next sibling,
+ * the siblings are kept sorted by their labels.
+ * The root has always the id 0.
+ * As an IAutomaton, the states are the node ids and every edge
+ * is represented by the id of the node it leads to.
  */
-public class Trie implements Serializable {
-    private TrieNode root = new TrieNode();
+public class Trie implements IAutomaton {
+    private static final int initialCapacity = 16;
+
+    /** Character on the edge leading to the node.*/
+    private char[] labels;
+    /** Id of the first (smallest label) child of the node.*/
+    private int[] firstChild;
+    /** Id of the next sibling (with greater label) of the node.*/
+    private int[] nextSibling;
+    /** Bitset of the nodes that are the end of a word.*/
+    private long[] endOfWord;
+    /** Number of used nodes.*/
+    private int size;
+
+    public Trie(){
+        labels = new char[initialCapacity];
+        firstChild = new int[initialCapacity];
+        nextSibling = new int[initialCapacity];
+        endOfWord = new long[1];
+        size = 0;
+        newNode('\0');
+    }
 
     /**Creates Trie from a Stream of Strings.
      * @param stream: Stream of Strings representing
@@ -24,16 +54,99 @@ public class Trie implements Serializable {
         return trie;
     }
 
+    /**Merge the tries whose words start with different characters
+     * (e.g. tries built in parallel from the words partitioned
+     * by their first character) into one trie.
+     * The nodes of the tries are copied one after another,
+     * only the children of the root are linked again.
+     * @param parts: the tries, no two of them may have a word
+     * starting with the same character
+     * @return the merged trie
+     * @throws IllegalArgumentException if two tries have words
+     * starting with the same character
+     */
+    public static Trie merge(List<Trie> parts){
+        int total = 1;
+        for (Trie part: parts){
+            total += part.size - 1;
+        }
+        Trie merged = new Trie();
+        merged.labels = Arrays.copyOf(merged.labels, total);
+        merged.firstChild = Arrays.copyOf(merged.firstChild, total);
+        merged.nextSibling = Arrays.copyOf(merged.nextSibling, total);
+        merged.endOfWord = Arrays.copyOf(merged.endOfWord, (total + 63) >>> 6);
+
+        List<Integer> rootChildren = new ArrayList<>();
+        for (Trie part: parts){
+            // the node i of the part (except its root) becomes the node i + offset
+            int offset = merged.size - 1;
+            int count = part.size - 1;
+            System.arraycopy(part.labels, 1, merged.labels, merged.size, count);
+            for (int i = 1; i < part.size; i++){
+                int child = part.firstChild[i];
+                int sibling = part.nextSibling[i];
+                merged.firstChild[i + offset] = child == NONE ? NONE : child + offset;
+                merged.nextSibling[i + offset] = sibling == NONE ? NONE : sibling + offset;
+            }
+            for (int word = 0; word < part.endOfWord.length; word++){
+                long bits = part.endOfWord[word];
+                while (bits != 0){
+                    int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int target = node == 0 ? 0 : node + offset;
+                    merged.endOfWord[target >>> 6] |= 1L << target;
+                }
+            }
+            for (int child = part.firstChild[0]; child != NONE; child = part.nextSibling[child]){
+                rootChildren.add(child + offset);
+            }
+            merged.size += count;
+        }
+
+        rootChildren.sort((a, b) -> Character.compare(merged.labels[a], merged.labels[b]));
+        int previous = NONE;
+        for (int child: rootChildren){
+            if (previous != NONE && merged.labels[previous] == merged.labels[child]){
+                throw new IllegalArgumentException("The merged tries have words starting with the same character.");
+            }
+            if (previous == NONE){
+                merged.firstChild[0] = child;
+            }
+            else{
+                merged.nextSibling[previous] = child;
+            }
+            previous = child;
+        }
+        if (previous != NONE){
+            merged.nextSibling[previous] = NONE;
+        }
+        return merged;
+    }
+
+    /**Create an independent copy of the trie,
+     * further changes of any of them do not affect the other one.
+     * @return the copy
+     */
+    public Trie copy(){
+        Trie copy = new Trie();
+        copy.labels = Arrays.copyOf(labels, labels.length);
+        copy.firstChild = Arrays.copyOf(firstChild, firstChild.length);
+        copy.nextSibling = Arrays.copyOf(nextSibling, nextSibling.length);
+        copy.endOfWord = Arrays.copyOf(endOfWord, endOfWord.length);
+        copy.size = size;
+        return copy;
+    }
+
     /**Add a given word to the trie.
      * @param word: the word to be added.
      */
     public void add(String word) {
-        TrieNode current = root;
-    
-        for (char l: word.toCharArray()) {
-            current = current.getChildren().computeIfAbsent(l, c -> new TrieNode());
+        int current = 0;
+
+        for (int i = 0; i < word.length(); i++) {
+            current = getOrAddChild(current, word.charAt(i));
         }
-        current.setEndOfWord(true);
+        endOfWord[current >>> 6] |= 1L << current;
     }
 
     /**Checks, whether a given word is present in the trie.
@@ -41,15 +154,141 @@ public class Trie implements Serializable {
      * @return true/false
      */
     public boolean contains(String word) {
-        TrieNode current = root;
+        int current = 0;
         for (int i = 0; i < word.length(); i++) {
-            char ch = word.charAt(i);
-            TrieNode node = current.getChildren().get(ch);
-            if (node == null) {
+            current = getChild(current, word.charAt(i));
+            if (current == NONE) {
                 return false;
             }
-            current = node;
         }
-        return current.isEndOfWord();
+        return isEndOfWord(current);
+    }
+
+    /** Get the number of nodes of the trie (including the root).
+     * @return the number of nodes.
+     */
+    public int size(){
+        return size;
+    }
+
+    /** Release the unused capacity of the arenas.
+     * Useful after the trie was built and only few additions are expected.
+     */
+    public void trimToSize(){
+        labels = Arrays.copyOf(labels, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        endOfWord = Arrays.copyOf(endOfWord, (size + 63) >>> 6);
+    }
+
+    @Override
+    public int getRoot(){
+        return 0;
+    }
+
+    @Override
+    public boolean isFinal(int state){
+        return isEndOfWord(state);
+    }
+
+    @Override
+    public int step(int state, char c){
+        return getChild(state, c);
+    }
+
+    @Override
+    public int getFirstEdge(int state){
+        return firstChild[state];
+    }
+
+    @Override
+    public int getNextEdge(int edge){
+        return nextSibling[edge];
+    }
+
+    @Override
+    public char getLabel(int edge){
+        return labels[edge];
+    }
+
+    @Override
+    public int getTarget(int edge){
+        return edge;
+    }
+
+    /** Get the property of being end of a word.
+     * @param node: id of the node
+     * @return true/false.
+     */
+    private boolean isEndOfWord(int node){
+        return (endOfWord[node >>> 6] & (1L << node)) != 0;
+    }
+
+    /** Find the child of the node with the given label.
+     * @param node: id of the parent node
+     * @param c: the label of the child
+     * @return id of the child or NONE if there is no such child
+     */
+    private int getChild(int node, char c){
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]){
+            char label = labels[child];
+            if (label == c){
+                return child;
+            }
+            if (label > c){
+                break;
+            }
+        }
+        return NONE;
+    }
+
+    /** Find the child of the node with the given label,
+     * create it if it does not exist yet.
+     * The siblings stay sorted by their labels.
+     * @param node: id of the parent node
+     * @param c: the label of the child
+     * @return id of the (possibly new) child
+     */
+    private int getOrAddChild(int node, char c){
+        int previous = NONE;
+        int child = firstChild[node];
+        while (child != NONE && labels[child] < c){
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child != NONE && labels[child] == c){
+            return child;
+        }
+        int added = newNode(c);
+        nextSibling[added] = child;
+        if (previous == NONE){
+            firstChild[node] = added;
+        }
+        else{
+            nextSibling[previous] = added;
+        }
+        return added;
+    }
+
+    /** Allocate a new node without children and siblings.
+     * Grows the arenas if needed.
+     * @param label: the character on the edge leading to the node
+     * @return id of the new node
+     */
+    private int newNode(char label){
+        if (size == labels.length){
+            int capacity = labels.length + Math.max(1, labels.length >> 1);
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+        }
+        if ((size >>> 6) == endOfWord.length){
+            endOfWord = Arrays.copyOf(endOfWord, endOfWord.length * 2);
+        }
+        int node = size++;
+        labels[node] = label;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        return node;
     }
-}
\ No newline at end of file
+}